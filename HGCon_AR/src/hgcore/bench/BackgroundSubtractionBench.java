@@ -0,0 +1,103 @@
+package hgcore.bench;
+
+import java.util.Random;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import hgcore.core.BackgroundSubtractor;
+
+/*
+ * Per-frame cost of the old per-pixel Mat.get/put loop against the
+ * BackgroundSubtractor NATIVE and BULK modes on synthetic frames.
+ *
+ * usage: BackgroundSubtractionBench [width height [frames]]
+ */
+public class BackgroundSubtractionBench {
+	
+	public static void main(String[] args)	{
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+		
+		int width = args.length > 1 ? Integer.parseInt(args[0]) : 640;
+		int height = args.length > 1 ? Integer.parseInt(args[1]) : 480;
+		int frames = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+		double tresh = 80;
+		
+		Mat model = randomFrame(width, height, 1);
+		Mat frame = randomFrame(width, height, 2);
+		Mat out = new Mat();
+		
+		System.out.println("Background subtraction " + width + "x" + height + ", " + frames + " frames");
+		
+		//the old loop is slow enough that a handful of frames is plenty
+		int legacyFrames = Math.max(1, frames / 20);
+		long t0 = System.nanoTime();
+		for(int n = 0; n < legacyFrames; n++)	{
+			frame.copyTo(out);
+			legacy(out, model, tresh);
+		}//for
+		report("per-pixel get/put", System.nanoTime() - t0, legacyFrames);
+		Mat expected = out.clone();
+		
+		int[] modes = { BackgroundSubtractor.NATIVE, BackgroundSubtractor.BULK };
+		String[] names = { "native", "bulk byte[]" };
+		for(int k = 0; k < modes.length; k++)	{
+			BackgroundSubtractor sub = new BackgroundSubtractor(modes[k]);
+			sub.setModel(model);
+			sub.setThreshold(tresh);
+			
+			//warm up the JIT before timing
+			for(int n = 0; n < 20; n++)
+				sub.apply(frame, out);
+			
+			t0 = System.nanoTime();
+			for(int n = 0; n < frames; n++)
+				sub.apply(frame, out);
+			report(names[k], System.nanoTime() - t0, frames);
+			
+			if(!same(expected, out))
+				System.out.println("  WARNING: " + names[k] + " mask differs from the per-pixel loop");
+		}//for
+	}//main
+	
+	//the original HG_Core loop
+	static void legacy(Mat ground, Mat model, double tresh)	{
+		for (int i = 0; i < ground.rows(); i++)
+			for (int j = 0; j < ground.cols(); j++)	{
+				double[] srcPx = ground.get(i,j);
+				double[] mskPx = model.get(i,j);
+				double b = Math.abs(mskPx[0] - srcPx[0]);
+				double g = Math.abs(mskPx[1] - srcPx[1]);
+				double r = Math.abs(mskPx[2] - srcPx[2]);
+				if(b < tresh && g < tresh && r < tresh)
+					ground.put(i, j, new double[]{ 0, 0, 0 });
+				else
+					ground.put(i, j, new double[]{ 255, 255, 255 });
+			}//for
+	}//legacy
+	
+	static Mat randomFrame(int width, int height, long seed)	{
+		byte[] px = new byte[width * height * 3];
+		new Random(seed).nextBytes(px);
+		Mat m = new Mat(height, width, CvType.CV_8UC3);
+		m.put(0, 0, px);
+		return m;
+	}//randomFrame
+	
+	static boolean same(Mat a, Mat b)	{
+		byte[] pa = new byte[(int)(a.total() * a.channels())];
+		byte[] pb = new byte[(int)(b.total() * b.channels())];
+		if(pa.length != pb.length)
+			return false;
+		a.get(0, 0, pa);
+		b.get(0, 0, pb);
+		return java.util.Arrays.equals(pa, pb);
+	}//same
+	
+	static void report(String name, long nanos, int frames)	{
+		double ms = nanos / 1e6 / frames;
+		System.out.println(String.format("  %-20s %9.3f ms/frame  %8.1f fps", name, ms, 1000 / ms));
+	}//report
+	
+}//class
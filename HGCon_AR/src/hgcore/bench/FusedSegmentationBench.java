@@ -0,0 +1,197 @@
+package hgcore.bench;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import hgcore.core.Blob;
+import hgcore.core.BlobLabeler;
+import hgcore.core.ColorClassifier;
+import hgcore.core.ColorRange;
+import hgcore.core.FusedSegmenter;
+import hgcore.core.RowBands;
+
+/*
+ * FusedSegmenter against the same steps run the multi-pass way (classify
+ * the frame, dilate across, dilate down, erode across, erode down, label),
+ * each a full frame pass over its own array. Both are timed on one thread
+ * so only the memory traffic differs, then the fused pass on all RowBands
+ * threads. Checks both give the same mask and blobs.
+ * Pure Java: frames are synthetic or read from a directory with ImageIO,
+ * the native library is never loaded.
+ *
+ * usage: FusedSegmentationBench [frame dir | width height] [frames]
+ */
+public class FusedSegmentationBench {
+	
+	public static void main(String[] args) throws IOException	{
+		byte[] frame;
+		int width, height;
+		int frames;
+		if(args.length > 0 && new File(args[0]).isDirectory())	{
+			BufferedImage img = firstImage(new File(args[0]));
+			width = img.getWidth();
+			height = img.getHeight();
+			frame = ((DataBufferByte)img.getRaster().getDataBuffer()).getData();
+			frames = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		}//if
+		else	{
+			width = args.length > 1 ? Integer.parseInt(args[0]) : 640;
+			height = args.length > 1 ? Integer.parseInt(args[1]) : 480;
+			frames = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+			frame = syntheticFrame(width, height);
+		}//else
+		
+		//HG_Core's default HSV range
+		long t0 = System.nanoTime();
+		long[] table = ColorClassifier.build(new ColorRange(ColorRange.HSV,
+				new double[]{ 58, 125, 0 }, new double[]{ 256, 256, 256 }));
+		System.out.println("Fused segmentation " + width + "x" + height + ", " + frames + " frames (table built in "
+				+ (System.nanoTime() - t0) / 1000000 + " ms)");
+		
+		FusedSegmenter fused = new FusedSegmenter();
+		fused.setTable(table);
+		MultiPass multi = new MultiPass(width, height, table);
+		
+		for(int n = 0; n < 20; n++)	{
+			fused.segment(frame, height, width);
+			multi.segment(frame);
+		}//for
+		
+		int threads = RowBands.getParallelism();
+		RowBands.setParallelism(1);
+		long fusedNanos = 0, multiNanos = 0;
+		for(int n = 0; n < frames; n++)	{
+			t0 = System.nanoTime();
+			fused.segment(frame, height, width);
+			fusedNanos += System.nanoTime() - t0;
+			t0 = System.nanoTime();
+			multi.segment(frame);
+			multiNanos += System.nanoTime() - t0;
+		}//for
+		report("multi-pass", multiNanos, frames);
+		report("fused", fusedNanos, frames);
+		
+		RowBands.setParallelism(threads);
+		for(int n = 0; n < 20; n++)
+			fused.segment(frame, height, width);
+		fusedNanos = 0;
+		for(int n = 0; n < frames; n++)	{
+			t0 = System.nanoTime();
+			fused.segment(frame, height, width);
+			fusedNanos += System.nanoTime() - t0;
+		}//for
+		report("fused, " + threads + " threads", fusedNanos, frames);
+		
+		if(!Arrays.equals(fused.getMask(), multi.mask))
+			System.out.println("  WARNING: fused and multi-pass masks differ");
+		Blob a = fused.getHand(), b = multi.hand();
+		if(a == null ? b != null : b == null || a.area != b.area || a.m10 != b.m10 || a.m01 != b.m01)
+			System.out.println("  WARNING: fused and multi-pass hands differ");
+		System.out.println("  " + fused.getBlobs().size() + " blobs, hand " + (a == null ? "none" : a.area + " px at "
+				+ (int)a.getCx() + "," + (int)a.getCy()));
+	}//main
+	
+	static void report(String name, long nanos, int frames)	{
+		double ms = nanos / 1e6 / frames;
+		System.out.println(String.format("  %-20s %9.3f ms/frame  %8.1f fps", name, ms, 1000 / ms));
+	}//report
+	
+	//the steps one full frame at a time, like the chain of OpenCV calls
+	static class MultiPass	{
+		final int w, h;
+		final long[] table;
+		final byte[] cls, a, b, mask;
+		final BlobLabeler labeler = new BlobLabeler();
+		ArrayList<Blob> blobs;
+		
+		MultiPass(int w, int h, long[] table)	{
+			this.w = w;
+			this.h = h;
+			this.table = table;
+			cls = new byte[w * h];
+			a = new byte[w * h];
+			b = new byte[w * h];
+			mask = new byte[w * h];
+		}//construct
+		
+		void segment(byte[] f)	{
+			for(int p = 0, i = 0; p < w * h; p++, i += 3)	{
+				int idx = ((f[i] & 0xff) << 16) | ((f[i + 1] & 0xff) << 8) | (f[i + 2] & 0xff);
+				cls[p] = (table[idx >>> 6] & (1L << idx)) != 0 ? (byte)255 : 0;
+			}//for
+			across(cls, a, 2, true);
+			down(a, b, 2, true);
+			across(b, a, 1, false);
+			down(a, mask, 1, false);
+			blobs = labeler.label(mask, h, w, 600);
+		}//segment
+		
+		void across(byte[] in, byte[] out, int r, boolean max)	{
+			for(int y = 0; y < h; y++)
+				for(int x = 0; x < w; x++)	{
+					byte v = max ? 0 : (byte)255;
+					for(int k = Math.max(0, x - r); k <= Math.min(w - 1, x + r); k++)
+						v = max ? (byte)(v | in[y * w + k]) : (byte)(v & in[y * w + k]);
+					out[y * w + x] = v;
+				}//for
+		}//across
+		
+		void down(byte[] in, byte[] out, int r, boolean max)	{
+			for(int y = 0; y < h; y++)
+				for(int x = 0; x < w; x++)	{
+					byte v = max ? 0 : (byte)255;
+					for(int k = Math.max(0, y - r); k <= Math.min(h - 1, y + r); k++)
+						v = max ? (byte)(v | in[k * w + x]) : (byte)(v & in[k * w + x]);
+					out[y * w + x] = v;
+				}//for
+		}//down
+		
+		Blob hand()	{
+			Blob hand = null;
+			for(Blob bl : blobs)
+				if(hand == null || bl.area > hand.area)
+					hand = bl;
+			return hand;
+		}//hand
+	}//MultiPass
+	
+	//grey noise with a gloved hand in HG_Core's default range (blue) and a few specks
+	static byte[] syntheticFrame(int width, int height)	{
+		Random rnd = new Random(3);
+		byte[] f = new byte[width * height * 3];
+		for(int y = 0; y < height; y++)
+			for(int x = 0; x < width; x++)	{
+				int i = (y * width + x) * 3;
+				int dx = x - width / 2, dy = y - height / 2;
+				boolean hand = dx * dx * 4 + dy * dy < height * height / 9 || rnd.nextInt(400) == 0;
+				int g = 90 + rnd.nextInt(40);
+				f[i] = (byte)(hand ? 200 + rnd.nextInt(30) : g);
+				f[i + 1] = (byte)(hand ? 70 + rnd.nextInt(20) : g);
+				f[i + 2] = (byte)(hand ? 50 + rnd.nextInt(20) : g);
+			}//for
+		return f;
+	}//syntheticFrame
+	
+	//first image of the directory as 3 byte BGR
+	static BufferedImage firstImage(File dir) throws IOException	{
+		File[] files = dir.listFiles();
+		Arrays.sort(files);
+		for(File f : files)	{
+			BufferedImage img = ImageIO.read(f);
+			if(img == null)
+				continue;
+			BufferedImage bgr = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+			bgr.getGraphics().drawImage(img, 0, 0, null);
+			return bgr;
+		}//for
+		throw new IOException("No images in " + dir);
+	}//firstImage
+	
+}//class
@@ -0,0 +1,83 @@
+package hgcore.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import hgcore.core.PixelKernels;
+
+/*
+ * Scalar against SWAR for the background mask and true colour reveal
+ * kernels, single threaded on flat BGR arrays at 480p, 720p and 1080p.
+ * Pure Java, no OpenCV needed.
+ *
+ * usage: PixelKernelBench [frames]
+ */
+public class PixelKernelBench {
+	
+	private static final int[][] SIZES = { {640, 480}, {1280, 720}, {1920, 1080} };
+	
+	public static void main(String[] args)	{
+		int frames = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		Random rnd = new Random(7);
+		
+		System.out.println("   size        kernel   scalar ms    swar ms  speedup");
+		for(int s = 0; s < SIZES.length; s++)	{
+			int len = SIZES[s][0] * SIZES[s][1] * 3;
+			byte[] model = new byte[len];
+			byte[] camera = new byte[len];
+			byte[] frame = new byte[len];
+			byte[] ground = new byte[len];
+			rnd.nextBytes(model);
+			rnd.nextBytes(camera);
+			//mostly background with some foreground, like a real scene
+			for(int i = 0; i < len; i++)
+				frame[i] = rnd.nextInt(4) == 0 ? camera[i] : (byte)(model[i] + rnd.nextInt(21) - 10);
+			
+			byte[][] out = new byte[2][];
+			double[] maskMs = new double[2];
+			double[] revealMs = new double[2];
+			for(int k = 0; k < 2; k++)	{
+				PixelKernels.setSwar(k == 1);
+				byte[] work = new byte[len];
+				
+				for(int n = 0; n < 50; n++)	{
+					System.arraycopy(frame, 0, work, 0, len);
+					PixelKernels.mask(work, model, 80, 0, len);
+				}//for
+				long nanos = 0;
+				for(int n = 0; n < frames; n++)	{
+					System.arraycopy(frame, 0, work, 0, len);
+					long t0 = System.nanoTime();
+					PixelKernels.mask(work, model, 80, 0, len);
+					nanos += System.nanoTime() - t0;
+				}//for
+				maskMs[k] = nanos / 1e6 / frames;
+				out[k] = work.clone();
+				
+				//the mask inverted makes a realistic reveal input
+				for(int i = 0; i < len; i++)
+					ground[i] = (byte)~work[i];
+				for(int n = 0; n < 50; n++)	{
+					System.arraycopy(ground, 0, work, 0, len);
+					PixelKernels.reveal(work, camera, 0, len);
+				}//for
+				nanos = 0;
+				for(int n = 0; n < frames; n++)	{
+					System.arraycopy(ground, 0, work, 0, len);
+					long t0 = System.nanoTime();
+					PixelKernels.reveal(work, camera, 0, len);
+					nanos += System.nanoTime() - t0;
+				}//for
+				revealMs[k] = nanos / 1e6 / frames;
+			}//for
+			
+			String size = SIZES[s][0] + "x" + SIZES[s][1];
+			System.out.println(String.format("%9s  %12s  %10.3f  %9.3f  %6.2fx", size, "mask", maskMs[0], maskMs[1], maskMs[0] / maskMs[1]));
+			System.out.println(String.format("%9s  %12s  %10.3f  %9.3f  %6.2fx", size, "reveal", revealMs[0], revealMs[1], revealMs[0] / revealMs[1]));
+			if(!Arrays.equals(out[0], out[1]))
+				System.out.println("  WARNING: scalar and SWAR masks differ");
+		}//for
+		PixelKernels.setSwar(true);
+	}//main
+	
+}//class
@@ -0,0 +1,74 @@
+package hgcore.bench;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+import hgcore.core.BackgroundSubtractor;
+import hgcore.core.RowBands;
+import hgcore.core.TrueColorReveal;
+
+/*
+ * How the row-banded Java pixel stages (bulk background mask and the true
+ * colour reveal) scale from 1 to N worker threads at 480p, 720p and 1080p.
+ *
+ * usage: RowBandScalingBench [max threads [frames]]
+ */
+public class RowBandScalingBench {
+	
+	private static final int[][] SIZES = { {640, 480}, {1280, 720}, {1920, 1080} };
+	
+	public static void main(String[] args)	{
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+		
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		int frames = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		
+		for(int s = 0; s < SIZES.length; s++)	{
+			int width = SIZES[s][0], height = SIZES[s][1];
+			Mat model = BackgroundSubtractionBench.randomFrame(width, height, 1);
+			Mat frame = BackgroundSubtractionBench.randomFrame(width, height, 2);
+			Mat mask = new Mat();
+			Mat ground = new Mat();
+			
+			System.out.println(width + "x" + height + ", " + frames + " frames");
+			System.out.println("  threads   mask ms  speedup   reveal ms  speedup");
+			
+			BackgroundSubtractor sub = new BackgroundSubtractor(BackgroundSubtractor.BULK);
+			sub.setModel(model);
+			TrueColorReveal reveal = new TrueColorReveal();
+			
+			double mask1 = 0, reveal1 = 0;
+			for(int p = 1; p <= maxThreads; p++)	{
+				RowBands.setParallelism(p);
+				
+				for(int n = 0; n < 20; n++)
+					sub.apply(frame, mask);
+				long t0 = System.nanoTime();
+				for(int n = 0; n < frames; n++)
+					sub.apply(frame, mask);
+				double maskMs = (System.nanoTime() - t0) / 1e6 / frames;
+				
+				for(int n = 0; n < 20; n++)	{
+					mask.copyTo(ground);
+					reveal.apply(ground, frame);
+				}//for
+				long revealNanos = 0;
+				for(int n = 0; n < frames; n++)	{
+					mask.copyTo(ground);
+					t0 = System.nanoTime();
+					reveal.apply(ground, frame);
+					revealNanos += System.nanoTime() - t0;
+				}//for
+				double revealMs = revealNanos / 1e6 / frames;
+				
+				if(p == 1)	{
+					mask1 = maskMs;
+					reveal1 = revealMs;
+				}//if
+				System.out.println(String.format("  %7d  %8.3f  %6.2fx  %9.3f  %6.2fx",
+						p, maskMs, mask1 / maskMs, revealMs, reveal1 / revealMs));
+			}//for
+		}//for
+	}//main
+	
+}//class
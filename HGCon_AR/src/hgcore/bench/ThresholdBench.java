@@ -0,0 +1,75 @@
+package hgcore.bench;
+
+import java.util.Random;
+
+import hgcore.core.AdaptiveThresholdModel;
+
+/*
+ * The fixed threshold against the LOCAL (integral image) and OTSU modes of
+ * AdaptiveThresholdModel on a synthetic scene: a textured background whose
+ * right half got brighter after the model was taken, with a hand sized
+ * block in front. Reports time per frame and how many pixels each mode got
+ * wrong against the known hand. Pure Java, no OpenCV needed.
+ *
+ * usage: ThresholdBench [width height [frames]]
+ */
+public class ThresholdBench {
+	
+	public static void main(String[] args)	{
+		int width = args.length > 1 ? Integer.parseInt(args[0]) : 640;
+		int height = args.length > 1 ? Integer.parseInt(args[1]) : 480;
+		int frames = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+		int len = width * height * 3;
+		Random rnd = new Random(11);
+		
+		byte[] model = new byte[len];
+		byte[] frame = new byte[len];
+		boolean[] hand = new boolean[width * height];
+		int hx = width / 3, hy = height / 4, hw = width / 5, hh = height / 2;
+		for(int y = 0; y < height; y++)
+			for(int x = 0; x < width; x++)	{
+				int p = y * width + x;
+				//lighting gain grows across the right half
+				double gain = x < width / 2 ? 1 : 1 + 0.6 * (x - width / 2) / (double)(width / 2);
+				hand[p] = x >= hx && x < hx + hw && y >= hy && y < hy + hh;
+				for(int c = 0; c < 3; c++)	{
+					int bg = 60 + ((x / 8 + y / 8) % 4) * 20 + c * 10;
+					model[p * 3 + c] = (byte)bg;
+					int v = hand[p] ? 170 + c * 15 : (int)(bg * gain);
+					v += rnd.nextInt(13) - 6;
+					frame[p * 3 + c] = (byte)Math.max(0, Math.min(255, v));
+				}//for
+			}//for
+		
+		System.out.println("Threshold modes " + width + "x" + height + ", " + frames + " frames");
+		String[] names = { "fixed", "local mean", "otsu" };
+		byte[] work = new byte[len];
+		for(int m = 0; m < names.length; m++)	{
+			AdaptiveThresholdModel model3 = new AdaptiveThresholdModel(m);
+			model3.setThreshold(40);
+			for(int n = 0; n < 20; n++)	{
+				System.arraycopy(frame, 0, work, 0, len);
+				model3.mask(work, model, height, width);
+			}//for
+			long nanos = 0;
+			for(int n = 0; n < frames; n++)	{
+				System.arraycopy(frame, 0, work, 0, len);
+				long t0 = System.nanoTime();
+				model3.mask(work, model, height, width);
+				nanos += System.nanoTime() - t0;
+			}//for
+			
+			int missed = 0, extra = 0;
+			for(int p = 0; p < hand.length; p++)	{
+				boolean fg = work[p * 3] != 0;
+				if(hand[p] && !fg)
+					missed++;
+				else if(!hand[p] && fg)
+					extra++;
+			}//for
+			System.out.println(String.format("%12s  %8.3f ms/frame  threshold %3d  hand missed %6d  background set %6d",
+					names[m], nanos / 1e6 / frames, model3.getLastThreshold(), missed, extra));
+		}//for
+	}//main
+	
+}//class
@@ -5,19 +5,25 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.GridLayout;
+import java.awt.Point;
 import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
 import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.net.URL;
+import java.util.ArrayList;
 
+import javax.swing.ButtonGroup;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -26,8 +32,10 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JRadioButtonMenuItem;
 import javax.swing.JSlider;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.event.ChangeEvent;
@@ -36,7 +44,7 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 
 import org.opencv.core.Core;
 
-public class ARPT_Cast extends JFrame implements ChangeListener, ItemListener, ActionListener{
+public class ARPT_Cast extends JFrame implements ChangeListener, ItemListener, ActionListener, ProfileWatcher.Listener{
 	
 	HG_Core core = new HG_Core();
 	
@@ -57,15 +65,43 @@ public class ARPT_Cast extends JFrame implements ChangeListener, ItemListener, A
 	private JCheckBox convexityDefectsBtn = new JCheckBox("Convexity Defects");
 	private JCheckBox boundingRect = new JCheckBox("Bounding Box");
 	private JCheckBox cogBtn = new JCheckBox("Center Of Gravity / Mass");
+	private JCheckBox roiBtn = new JCheckBox("Track Hand Region");
 	
 	private JMenuBar menuBar = new JMenuBar();
 	private JMenu fileMenu = new JMenu("File");
 	private JMenuItem menuItem;
+	private JMenuItem recordItem = new JMenuItem("Record Session", KeyEvent.VK_R);
+	private boolean recording = false;
+	private JMenuItem saveProfileItem = new JMenuItem("Save Calibration...");
+	private JMenuItem loadProfileItem = new JMenuItem("Load Calibration...");
+	private JMenuItem zoneItem = new JMenuItem("Draw Ignore Zone");
+	private JMenuItem clearZonesItem = new JMenuItem("Clear Ignore Zones");
+	//ignore zone being drawn, click for points and double click to close
+	private ArrayList<Point> zonePoints;
+	private ProfileWatcher profileWatcher;
+	private JMenu bgMenu = new JMenu("Background");
+	private JRadioButtonMenuItem[] bgModelItems = {
+			new JRadioButtonMenuItem("Fixed Frame", true),
+			new JRadioButtonMenuItem("Running Average"),
+			new JRadioButtonMenuItem("Gaussian Mixture"),
+			new JRadioButtonMenuItem("Codebook"),
+			new JRadioButtonMenuItem("Local Mean Threshold"),
+			new JRadioButtonMenuItem("Otsu Threshold") };
+	private JCheckBoxMenuItem colourItem = new JCheckBoxMenuItem("Colour Lookup Segmentation");
+	private JCheckBoxMenuItem relearnItem = new JCheckBoxMenuItem("Relearn On Lighting Change", false);
+	private JCheckBoxMenuItem faceItem = new JCheckBoxMenuItem("Exclude Face");
+	private JCheckBoxMenuItem shadowItem = new JCheckBoxMenuItem("Suppress Shadows");
+	private JCheckBoxMenuItem normalizeItem = new JCheckBoxMenuItem("Normalise Illumination");
+	private JCheckBoxMenuItem adaptiveItem = new JCheckBoxMenuItem("Adapt Skin Colour");
+	private JMenuItem calibrateItem = new JMenuItem("Calibrate Hand Colour");
+	private JCheckBoxMenuItem camShiftItem = new JCheckBoxMenuItem("CamShift Tracking");
 	
 	
 	
 	JSlider threshSlider = new JSlider(JSlider.HORIZONTAL, 0, 255, 0);
 	JLabel tVal = new JLabel("Current Threshold: 50");
+	JLabel latencyLbl = new JLabel(" ");
+	private long latencyShown = 0;
 	
 	
 
@@ -99,6 +135,29 @@ public class ARPT_Cast extends JFrame implements ChangeListener, ItemListener, A
 		fileMenu.add(menuItem);
 
 		setJMenuBar(menuBar); menuItem.addActionListener(this);
+		fileMenu.add(recordItem); recordItem.addActionListener(this);
+		fileMenu.addSeparator();
+		fileMenu.add(saveProfileItem); saveProfileItem.addActionListener(this);
+		fileMenu.add(loadProfileItem); loadProfileItem.addActionListener(this);
+		fileMenu.add(zoneItem); zoneItem.addActionListener(this);
+		fileMenu.add(clearZonesItem); clearZonesItem.addActionListener(this);
+		
+		ButtonGroup bgGroup = new ButtonGroup();
+		for(int i = 0; i < bgModelItems.length; i++)	{
+			bgGroup.add(bgModelItems[i]);
+			bgMenu.add(bgModelItems[i]); bgModelItems[i].addActionListener(this);
+		}//for
+		bgMenu.addSeparator();
+		bgMenu.add(relearnItem); relearnItem.addItemListener(this);
+		bgMenu.add(normalizeItem); normalizeItem.addItemListener(this);
+		bgMenu.add(shadowItem); shadowItem.addItemListener(this);
+		bgMenu.add(faceItem); faceItem.addItemListener(this);
+		bgMenu.add(colourItem); colourItem.addItemListener(this);
+		bgMenu.add(adaptiveItem); adaptiveItem.addItemListener(this);
+		bgMenu.addSeparator();
+		bgMenu.add(calibrateItem); calibrateItem.addActionListener(this);
+		bgMenu.add(camShiftItem); camShiftItem.addItemListener(this);
+		menuBar.add(bgMenu);
 		
 		
 		
@@ -106,12 +165,46 @@ public class ARPT_Cast extends JFrame implements ChangeListener, ItemListener, A
 		contentPane = new JPanel()	{
             protected void paintComponent(Graphics g) {
                 super.paintComponent(g);
-                BufferedImage dimg = core.getImage();
+                StampedImage frame = core.getStampedImage();
+                BufferedImage dimg = frame == null ? null : frame.image;
 //                resizeB(dimg, 500, 700);
                 g.drawImage(dimg, 0, 0, null);
+                IgnoreZones zones = core.getIgnoreZones();
+                if(zones != null && core.getFrameWidth() != 0)	{
+                	//frame pixels back to display points, the inverse of finishZone
+                	double sx = core.getGroundWidth() / (double)core.getFrameWidth();
+                	double sy = core.getGroundHeight() / (double)core.getFrameHeight();
+                	g.setColor(Color.ORANGE);
+                	for(int[] poly : zones.getPolygons())	{
+                		int n = poly.length / 2;
+                		int[] xs = new int[n], ys = new int[n];
+                		for(int i = 0; i < n; i++)	{
+                			xs[i] = (int)Math.round(poly[2 * i] * sx);
+                			ys[i] = (int)Math.round(poly[2 * i + 1] * sy);
+                		}//for
+                		g.drawPolygon(xs, ys, n);
+                	}//for
+                }//if
+                ArrayList<Point> zone = zonePoints;
+                if(zone != null)	{
+                	g.setColor(Color.YELLOW);
+                	for(int i = 1; i < zone.size(); i++)
+                		g.drawLine(zone.get(i - 1).x, zone.get(i - 1).y, zone.get(i).x, zone.get(i).y);
+                }//if
+                core.getLatency().painted(frame);
+                showLatency();
                 repaint();
             }
         };//pane
+        contentPane.addMouseListener(new MouseAdapter()	{
+        	public void mouseClicked(MouseEvent e)	{
+        		if(zonePoints == null)
+        			return;
+        		zonePoints.add(e.getPoint());
+        		if(e.getClickCount() == 2)
+        			finishZone();
+        	}
+        });
         
 		//content components
 		add(contentPane, BorderLayout.CENTER); contentPane.setBackground(Color.DARK_GRAY);
@@ -127,6 +220,7 @@ public class ARPT_Cast extends JFrame implements ChangeListener, ItemListener, A
 		HG_RecPane.add(convexityDefectsBtn);	convexityDefectsBtn.addItemListener(this);
 		HG_RecPane.add(boundingRect);	boundingRect.addItemListener(this);
 		HG_RecPane.add(cogBtn); cogBtn.addItemListener(this);
+		HG_RecPane.add(roiBtn); roiBtn.addItemListener(this);
 		
 		
 		//threshold
@@ -138,12 +232,25 @@ public class ARPT_Cast extends JFrame implements ChangeListener, ItemListener, A
         //        
         threshPane.add(threshSlider);
         threshPane.add(tVal, BorderLayout.NORTH);
+        threshPane.add(latencyLbl, BorderLayout.SOUTH);
         
         threshSlider.addChangeListener(this);
         
 		
 	}//construct
 	
+	//refresh the latency readout once a second
+	private void showLatency()	{
+		long now = System.currentTimeMillis();
+		if(now - latencyShown < 1000)
+			return;
+		latencyShown = now;
+		LatencyTracker lt = core.getLatency();
+		latencyLbl.setText(String.format("Latency p50 %.1f ms  p95 %.1f ms  p99 %.1f ms  |  unpainted %d  capture dropped %d",
+				lt.getPercentile(50), lt.getPercentile(95), lt.getPercentile(99),
+				lt.getUnpaintedFrames(), core.getDroppedFrames()));
+	}//showLatency
+	
 	public BufferedImage resizeB(BufferedImage img, int newW, int newH) {  
 	    int w = img.getWidth();  
 	    int h = img.getHeight();  
@@ -160,6 +267,44 @@ public class ARPT_Cast extends JFrame implements ChangeListener, ItemListener, A
 		
 		Object src = ae.getSource();
 		
+		//menu items leave the filter buttons alone
+		if(src == recordItem)	{
+			toggleRecording();
+			return;
+		}//if
+		if(src == zoneItem)	{
+			zonePoints = new ArrayList<Point>();
+			return;
+		}//if
+		if(src == clearZonesItem)	{
+			core.setIgnoreZones(null);
+			return;
+		}//if
+		if(src == saveProfileItem)	{
+			saveProfile();
+			return;
+		}//if
+		if(src == loadProfileItem)	{
+			JFileChooser fileChooser = new JFileChooser(new File("profiles"));
+			fileChooser.setFileFilter(new FileNameExtensionFilter("Calibration Profile", "hgp"));
+			if (fileChooser.showOpenDialog(null) == JFileChooser.APPROVE_OPTION)
+				loadProfile(fileChooser.getSelectedFile());
+			return;
+		}//if
+		if(src == calibrateItem)	{
+			//about three seconds to put the hand in the box
+			core.calibrateTracking(90);
+			return;
+		}//if
+		for(int i = 0; i < bgModelItems.length; i++)	{
+			if(src == bgModelItems[i])	{
+				core.setBackgroundModel(newBackgroundModel(i));
+				//shadows are only told apart by the fixed frame model, the setting is kept for when it comes back
+				shadowItem.setEnabled(i == 0);
+				return;
+			}//if
+		}//for
+		
 		if(src == trueColorNonCVBtn)	{
 			trueColorNonCVBtn.setEnabled(false);
 		}//if
@@ -214,9 +359,93 @@ public class ARPT_Cast extends JFrame implements ChangeListener, ItemListener, A
 	        	}catch(Exception e) {JOptionPane.showMessageDialog(null, "Unsupported image format");}//catch
 	        }//if
 		}//if
+		
 			
 	}//buttonStateChange
 	
+	private void toggleRecording()	{
+		if(recording)	{
+			core.stopRecording();
+			recording = false;
+			recordItem.setText("Record Session");
+		}//if
+		else	{
+			JFileChooser fileChooser = new JFileChooser();
+			fileChooser.setFileFilter(new FileNameExtensionFilter("HG Session", "hgs"));
+			if (fileChooser.showSaveDialog(null) == JFileChooser.APPROVE_OPTION) {
+				try	{
+					File out = fileChooser.getSelectedFile();
+					if(!out.getName().endsWith(".hgs"))
+						out = new File(out.getPath() + ".hgs");
+					core.startRecording(out, SessionFormat.RAW);
+					recording = true;
+					recordItem.setText("Stop Recording");
+				}catch(Exception e) {JOptionPane.showMessageDialog(null, "Can't record to that file");}//catch
+			}//if
+		}//else
+	}//toggleRecording
+	
+	//display points to frame pixels, the output is drawn scaled to the ground size at 0,0
+	private void finishZone()	{
+		ArrayList<Point> zone = zonePoints;
+		zonePoints = null;
+		if(zone.size() < 3 || core.getFrameWidth() == 0)
+			return;
+		double sx = core.getFrameWidth() / (double)core.getGroundWidth();
+		double sy = core.getFrameHeight() / (double)core.getGroundHeight();
+		int[] poly = new int[zone.size() * 2];
+		for(int i = 0; i < zone.size(); i++)	{
+			poly[2 * i] = (int)Math.round(zone.get(i).x * sx);
+			poly[2 * i + 1] = (int)Math.round(zone.get(i).y * sy);
+		}//for
+		core.addIgnoreZone(poly);
+	}//finishZone
+	
+	private void saveProfile()	{
+		String name = JOptionPane.showInputDialog(this, "Profile name:", "Save Calibration", JOptionPane.PLAIN_MESSAGE);
+		if(name == null || name.trim().isEmpty())
+			return;
+		name = name.trim();
+		try	{
+			File dir = new File("profiles");
+			dir.mkdirs();
+			core.makeProfile(name).save(new File(dir, name + ".hgp"));
+		}catch(Exception e) {JOptionPane.showMessageDialog(null, "Can't save profile " + name);}//catch
+	}//saveProfile
+	
+	//apply a profile and keep following it on disk
+	void loadProfile(File f)	{
+		try	{
+			profileChanged(CalibrationProfile.load(f));
+			if(profileWatcher != null)
+				profileWatcher.shutdown();
+			profileWatcher = new ProfileWatcher(f, this);
+			profileWatcher.start();
+		}catch(Exception e) {JOptionPane.showMessageDialog(null, "Can't load profile " + f.getName());}//catch
+	}//loadProfile
+	
+	//called from the watcher thread on hot reload
+	public void profileChanged(final CalibrationProfile p)	{
+		core.applyProfile(p);
+		SwingUtilities.invokeLater(new Runnable()	{
+			public void run()	{
+				threshSlider.setValue((int)p.threshold);
+				setTitle("ARPT: HG_Rec | B_Sub | " + p.name);
+			}
+		});
+	}//profileChanged
+	
+	private BackgroundModel newBackgroundModel(int idx)	{
+		switch(idx)	{
+			case 1: return new RunningAverageModel(0.02);
+			case 2: return new MogModel(-1);
+			case 3: return new CodebookModel();
+			case 4: return new AdaptiveThresholdModel(AdaptiveThresholdModel.LOCAL);
+			case 5: return new AdaptiveThresholdModel(AdaptiveThresholdModel.OTSU);
+			default: return null; // fixed model
+		}//switch
+	}//newBackgroundModel
+	
 	public void itemStateChanged(ItemEvent e) {
 	    Object source = e.getItemSelectable();
 	    
@@ -239,6 +468,40 @@ public class ARPT_Cast extends JFrame implements ChangeListener, ItemListener, A
 	    else if (source == cogBtn) {
 	    	core.viewCOG = !core.viewCOG;
 	    }//else
+	    
+	    else if (source == colourItem) {
+	    	core.setColourSegmentation(colourItem.isSelected(), true);
+	    }//else
+	    
+	    else if (source == adaptiveItem) {
+	    	core.setAdaptiveSkin(adaptiveItem.isSelected());
+	    }//else
+	    
+	    else if (source == camShiftItem) {
+	    	core.setCamShiftTracking(camShiftItem.isSelected());
+	    }//else
+	    
+	    else if (source == faceItem) {
+	    	//every 10th frame, cascade from -Dhgcore.faceCascade
+	    	core.setFaceExclusion(faceItem.isSelected()
+	    			? System.getProperty("hgcore.faceCascade", "haarcascade_frontalface_alt.xml") : null, 10);
+	    }//else
+	    
+	    else if (source == shadowItem) {
+	    	core.setShadowSuppression(shadowItem.isSelected());
+	    }//else
+	    
+	    else if (source == normalizeItem) {
+	    	core.setIlluminationNormalization(normalizeItem.isSelected(), 30);
+	    }//else
+	    
+	    else if (source == relearnItem) {
+	    	core.autoRelearn = relearnItem.isSelected();
+	    }//else
+	    
+	    else if (source == roiBtn) {
+	    	core.setRoiTracking(!core.isRoiTracking(), 0.5);
+	    }//else
 	}//itemStateChanged
 	
 	public void stateChanged(ChangeEvent e)	{
@@ -269,6 +532,10 @@ public class ARPT_Cast extends JFrame implements ChangeListener, ItemListener, A
 		frame.setLocationRelativeTo(null);
 		frame.setVisible(true);
 		
+		String profile = System.getProperty("hgcore.profile");
+		if(profile != null)
+			frame.loadProfile(new File(profile));
+		
 		frame.addWindowListener(new java.awt.event.WindowAdapter() {
 		    @Override
 		    public void windowClosing(java.awt.event.WindowEvent windowEvent) {
@@ -0,0 +1,173 @@
+package hgcore.core;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/*
+ * Skin colour learnt while running. Every confirmed hand is a labelled
+ * sample: pixels inside its contour count as skin, the rest of the frame
+ * as non-skin, in two 32x32x32 BGR histograms whose old samples fade out.
+ * Instead of decaying every bin per update the sample weight grows by
+ * 1/decay and the bins are rescaled once it gets large. Every few updates
+ * the histograms are copied and turned into a lookup table for the
+ * ColorClassifier on a background thread (a colour is skin where its skin
+ * likelihood beats its non-skin likelihood by the given ratio).
+ */
+public class AdaptiveSkinModel {
+	
+	private static final int BINS = 32 * 32 * 32;
+	private static final int STEP = 2;	// sample every other pixel and row
+	
+	private final ColorClassifier classifier;
+	private float[] skin = new float[BINS];
+	private float[] other = new float[BINS];
+	private double skinTotal, otherTotal;
+	private double weight = 1;
+	private double decay;
+	private double ratio = 1;
+	private int interval;
+	private int updates;
+	private double minSkin = 5000;
+	
+	private Mat mask = new Mat();
+	private byte[] px = new byte[0];
+	private byte[] maskPx = new byte[0];
+	private ArrayList<MatOfPoint> one = new ArrayList<MatOfPoint>();
+	
+	private final AtomicBoolean building = new AtomicBoolean();
+	private final ExecutorService builder = Executors.newSingleThreadExecutor(new ThreadFactory()	{
+		public Thread newThread(Runnable r)	{
+			Thread t = new Thread(r, "Skin Model");
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		}
+	});
+	
+	/*
+	 * decay is the weight an update keeps per later update (.98 forgets a
+	 * hand after about 50 confirmations), the table is rebuilt every
+	 * interval updates.
+	 */
+	public AdaptiveSkinModel(ColorClassifier classifier, double decay, int interval)	{
+		this.classifier = classifier;
+		this.decay = decay;
+		this.interval = Math.max(1, interval);
+	}//construct
+	
+	//one confirmed hand: frame is BGR, hand its contour in frame coordinates
+	public synchronized void update(Mat frame, MatOfPoint hand)	{
+		int rows = frame.rows(), cols = frame.cols();
+		mask.create(rows, cols, CvType.CV_8UC1);
+		mask.setTo(new Scalar(0));
+		one.clear();
+		one.add(hand);
+		Imgproc.drawContours(mask, one, 0, new Scalar(255), -1);
+		
+		int len = rows * cols;
+		if(maskPx.length != len)	{
+			maskPx = new byte[len];
+			px = new byte[len * 3];
+		}//if
+		frame.get(0, 0, px);
+		mask.get(0, 0, maskPx);
+		
+		weight /= decay;
+		float w = (float)weight;
+		double s = 0, o = 0;
+		for(int y = 0; y < rows; y += STEP)
+			for(int p = y * cols, end = p + cols; p < end; p += STEP)	{
+				int i = p * 3;
+				int bin = ((px[i] & 0xf8) << 7) | ((px[i + 1] & 0xf8) << 2) | ((px[i + 2] & 0xff) >>> 3);
+				if(maskPx[p] != 0)	{
+					skin[bin] += w;
+					s++;
+				}//if
+				else	{
+					other[bin] += w;
+					o++;
+				}//else
+			}//for
+		skinTotal += s * weight;
+		otherTotal += o * weight;
+		
+		if(weight > 1e6)
+			rescale();
+		
+		if(++updates % interval == 0 && skinTotal / weight >= minSkin)
+			rebuild();
+	}//update
+	
+	//bring the weight back to 1 before floats lose the small bins
+	private void rescale()	{
+		float k = (float)(1 / weight);
+		for(int b = 0; b < BINS; b++)	{
+			skin[b] *= k;
+			other[b] *= k;
+		}//for
+		skinTotal /= weight;
+		otherTotal /= weight;
+		weight = 1;
+	}//rescale
+	
+	//snapshot the histograms, build and install the table off the frame thread
+	private void rebuild()	{
+		if(!building.compareAndSet(false, true))
+			return;	// the last one is still being built, skip this round
+		final float[] s = skin.clone();
+		final float[] o = other.clone();
+		final double st = skinTotal, ot = otherTotal, r = ratio;
+		builder.submit(new Runnable()	{
+			public void run()	{
+				try	{
+					classifier.install(build(s, o, st, ot, r));
+				}finally	{
+					building.set(false);
+				}//finally
+			}
+		});
+	}//rebuild
+	
+	public static long[] build(float[] skin, float[] other, double skinTotal, double otherTotal, double ratio)	{
+		//per bin decision first, then spread it over the 2^24 colours
+		boolean[] isSkin = new boolean[BINS];
+		for(int b = 0; b < BINS; b++)
+			isSkin[b] = skin[b] > 0 && skin[b] / skinTotal > ratio * (other[b] / Math.max(otherTotal, 1));
+		
+		long[] t = new long[(1 << 24) / 64];
+		for(int idx = 0; idx < 1 << 24; idx++)	{
+			int bin = ((idx >>> 9) & 0x7c00) | ((idx >>> 6) & 0x3e0) | ((idx >>> 3) & 0x1f);
+			if(isSkin[bin])
+				t[idx >>> 6] |= 1L << idx;
+		}//for
+		return t;
+	}//build
+	
+	//likelihood ratio skin must beat non-skin by (default 1)
+	public void setRatio(double ratio)	{
+		this.ratio = ratio;
+	}//setRatio
+	
+	public int getUpdates()	{
+		return updates;
+	}//getUpdates
+	
+	//forget everything learnt
+	public synchronized void reset()	{
+		skin = new float[BINS];
+		other = new float[BINS];
+		skinTotal = otherTotal = 0;
+		weight = 1;
+		updates = 0;
+	}//reset
+	
+}//class
@@ -0,0 +1,233 @@
+package hgcore.core;
+
+import java.util.Arrays;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/*
+ * Single frame background model with a choice of how the difference is
+ * thresholded. The difference image (largest channel difference per pixel)
+ * is computed once, then
+ *
+ *   FIXED  compares it against the slider threshold, like BackgroundSubtractor
+ *   LOCAL  compares every pixel against the mean difference of the window
+ *          around it (Bradley-Roth), read in O(1) from an int[] integral
+ *          image, so a region lit up or darkened as a whole doesn't flood
+ *          or vanish from the mask
+ *   OTSU   picks the threshold from the difference histogram, gathered in
+ *          the same pass and smoothed over frames
+ *
+ * LOCAL and OTSU never go below the noise floor. All passes run on
+ * preallocated arrays in RowBands, the byte[] entry point works without
+ * the native library.
+ */
+public class AdaptiveThresholdModel implements BackgroundModel {
+	
+	public static final int FIXED = 0;
+	public static final int LOCAL = 1;
+	public static final int OTSU = 2;
+	
+	private int mode;
+	private double tresh = 80;
+	private int radius = 0;	// 0 picks 1/6 of the frame width
+	private int bias = 128;	// /256, a pixel has to beat its window mean by 50%
+	private int floor = 16;
+	private double smoothing = 0.5;
+	
+	private Mat model;	// created on learn(), mask() alone needs no native code
+	private byte[] modelPx = new byte[0];
+	private byte[] framePx = new byte[0];
+	private boolean modelDirty = true;
+	
+	private byte[] diff = new byte[0];
+	private int[] integral = new int[0];
+	private final int[] hist = new int[256];
+	private double otsu = -1;
+	private int lastThreshold;
+	
+	public AdaptiveThresholdModel(int mode)	{
+		this.mode = mode;
+	}//construct
+	
+	public void learn(Mat frame)	{
+		if(model == null)
+			model = new Mat();
+		frame.copyTo(model);
+		modelDirty = true;
+		otsu = -1;
+	}//learn
+	
+	public void relearn(Mat frame)	{
+		learn(frame);
+	}//relearn
+	
+	public void setThreshold(double value)	{
+		tresh = value;
+	}//setThreshold
+	
+	public void setMode(int mode)	{
+		this.mode = mode;
+	}//setMode
+	
+	public int getMode()	{
+		return mode;
+	}//getMode
+	
+	/*
+	 * LOCAL window radius in pixels (0 for 1/6 of the width) and how much a
+	 * pixel has to exceed its window mean, .5 is 50%.
+	 */
+	public void setLocal(int radius, double bias)	{
+		this.radius = radius;
+		this.bias = (int)Math.round(bias * 256);
+	}//setLocal
+	
+	//smallest difference LOCAL and OTSU count as foreground
+	public void setFloor(int floor)	{
+		this.floor = floor;
+	}//setFloor
+	
+	//OTSU only: weight of the previous frames' threshold (0 is none)
+	public void setSmoothing(double smoothing)	{
+		this.smoothing = smoothing;
+	}//setSmoothing
+	
+	//threshold used on the last frame, FIXED and OTSU
+	public int getLastThreshold()	{
+		return lastThreshold;
+	}//getLastThreshold
+	
+	public void apply(Mat frame, Mat out)	{
+		int len = (int)(frame.total() * frame.channels());
+		if(framePx.length != len)	{
+			framePx = new byte[len];
+			modelDirty = true;
+		}//if
+		if(modelDirty)	{
+			modelPx = new byte[len];
+			model.get(0, 0, modelPx);
+			modelDirty = false;
+		}//if
+		frame.get(0, 0, framePx);
+		
+		mask(framePx, modelPx, frame.rows(), frame.cols());
+		
+		out.create(frame.rows(), frame.cols(), CvType.CV_8UC3);
+		out.put(0, 0, framePx);
+	}//apply
+	
+	//frame and model are BGR rows x cols, the 0/255 mask is written into frame
+	public void mask(final byte[] frame, final byte[] model, final int rows, final int cols)	{
+		final int n = rows * cols;
+		if(diff.length != n)
+			diff = new byte[n];
+		final int m = mode;
+		final int w1 = cols + 1;
+		if(m == LOCAL && integral.length != (rows + 1) * w1)
+			integral = new int[(rows + 1) * w1];
+		if(m == OTSU)
+			Arrays.fill(hist, 0);
+		
+		//difference image, row prefix sums or the histogram on the way
+		final byte[] d = diff;
+		final int[] in = integral;
+		RowBands.run(rows, cols, new RowBands.Band()	{
+			public void rows(int from, int to)	{
+				int[] h = m == OTSU ? new int[256] : null;
+				for(int y = from; y < to; y++)	{
+					int sum = 0;
+					for(int x = 0, p = y * cols, i = p * 3; x < cols; x++, p++, i += 3)	{
+						int b = Math.abs((frame[i] & 0xff) - (model[i] & 0xff));
+						int g = Math.abs((frame[i + 1] & 0xff) - (model[i + 1] & 0xff));
+						int r = Math.abs((frame[i + 2] & 0xff) - (model[i + 2] & 0xff));
+						int v = Math.max(b, Math.max(g, r));
+						d[p] = (byte)v;
+						if(m == LOCAL)	{
+							sum += v;
+							in[(y + 1) * w1 + x + 1] = sum;
+						}//if
+						else if(m == OTSU)
+							h[v]++;
+					}//for
+				}//for
+				if(h != null)	{
+					synchronized(hist)	{
+						for(int v = 0; v < 256; v++)
+							hist[v] += h[v];
+					}//sync
+				}//if
+			}
+		});
+		
+		int t;
+		if(m == LOCAL)	{
+			//columns: add up the row prefix sums
+			for(int y = 2; y <= rows; y++)
+				for(int o = y * w1 + 1, up = o - w1, end = o + cols; o < end; o++, up++)
+					in[o] += in[up];
+			t = floor;
+		}//if
+		else if(m == OTSU)	{
+			double o = otsu(hist, n);
+			otsu = otsu < 0 ? o : smoothing * otsu + (1 - smoothing) * o;
+			t = Math.max(floor, (int)Math.round(otsu));
+		}//if
+		else
+			t = (int)Math.ceil(tresh);
+		lastThreshold = t;
+		
+		final int th = t;
+		final int r = radius > 0 ? radius : Math.max(1, cols / 6);
+		final long k = 256 + bias;
+		RowBands.run(rows, cols, new RowBands.Band()	{
+			public void rows(int from, int to)	{
+				for(int y = from; y < to; y++)	{
+					int y0 = Math.max(0, y - r) * w1, y1 = Math.min(rows, y + r + 1) * w1;
+					int hgt = (y1 - y0) / w1;
+					for(int x = 0, p = y * cols, i = p * 3; x < cols; x++, p++, i += 3)	{
+						int v = d[p] & 0xff;
+						boolean fg = v >= th;
+						if(fg && m == LOCAL)	{
+							int x0 = Math.max(0, x - r), x1 = Math.min(cols, x + r + 1);
+							long sum = in[y1 + x1] - in[y0 + x1] - in[y1 + x0] + in[y0 + x0];
+							fg = (long)v * (x1 - x0) * hgt * 256 > sum * k;
+						}//if
+						byte b = fg ? (byte)255 : 0;
+						frame[i] = b;
+						frame[i + 1] = b;
+						frame[i + 2] = b;
+					}//for
+				}//for
+			}
+		});
+	}//mask
+	
+	//difference above which the between class variance is largest
+	static double otsu(int[] hist, int n)	{
+		long total = 0;
+		for(int v = 0; v < 256; v++)
+			total += (long)v * hist[v];
+		long wb = 0, sumB = 0;
+		double best = -1;
+		int at = 0;
+		for(int v = 0; v < 255; v++)	{
+			wb += hist[v];
+			if(wb == 0)
+				continue;
+			long wf = n - wb;
+			if(wf == 0)
+				break;
+			sumB += (long)v * hist[v];
+			double mb = sumB / (double)wb;
+			double mf = (total - sumB) / (double)wf;
+			double between = (double)wb * wf * (mb - mf) * (mb - mf);
+			if(between > best)	{
+				best = between;
+				at = v;
+			}//if
+		}//for
+		return at + 1;
+	}//otsu
+	
+}//class
@@ -0,0 +1,22 @@
+package hgcore.core;
+
+import org.opencv.core.Mat;
+
+/*
+ * A background model HG_Core subtracts frames against. apply() writes a
+ * 3 channel 0/255 mask (out may be frame itself) and lets adaptive models
+ * update themselves in place from the same frame.
+ */
+public interface BackgroundModel {
+	
+	//first frame of the session
+	public void learn(Mat frame);
+	
+	public void apply(Mat frame, Mat out);
+	
+	//throw away what was learned and adapt quickly to the scene as it is now
+	public void relearn(Mat frame);
+	
+	public void setThreshold(double value);
+	
+}//interface
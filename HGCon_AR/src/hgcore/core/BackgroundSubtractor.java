@@ -0,0 +1,244 @@
+package hgcore.core;
+
+import java.util.ArrayList;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/*
+ * Non-adaptive background subtraction against a single model frame. A pixel
+ * is background (0,0,0) when every channel differs from the model by less
+ * than the threshold, otherwise it is foreground (255,255,255).
+ *
+ * NATIVE does the work in OpenCV (absdiff, threshold, or the channels
+ * together), BULK pulls the frame over JNI once and does a single pass over
+ * preallocated byte arrays (PixelKernels), split into RowBands. Pick the
+ * default with -Dhgcore.bgsub=native|bulk|shadow.
+ *
+ * SHADOW is BULK with cast shadows taken out: a changed pixel whose
+ * normalised chromaticity (each channel over B+G+R) matches the model but
+ * whose brightness dropped to a fraction of it is a shadow, not the hand.
+ * Shadows are left out of the mask and kept in a mask of their own.
+ */
+public class BackgroundSubtractor implements BackgroundModel {
+	
+	public static final int NATIVE = 0;
+	public static final int BULK = 1;
+	public static final int SHADOW = 2;
+	
+	private int mode;
+	private double tresh = 80;
+	
+	private Mat model = new Mat();
+	
+	//NATIVE buffers
+	private Mat diff = new Mat();
+	private Mat mask = new Mat();
+	private ArrayList<Mat> planes = new ArrayList<Mat>();
+	private ArrayList<Mat> merged = new ArrayList<Mat>();
+	
+	//BULK buffers
+	private byte[] modelPx = new byte[0];
+	private byte[] framePx = new byte[0];
+	private boolean modelDirty = true;
+	
+	//SHADOW: brightness ratio range and chromaticity tolerance, in 1/256
+	private int shadowLow = 102, shadowHigh = 243;	// .4 - .95
+	private int chromaTol = 8;	// .03
+	private byte[] shadowPx = new byte[0];
+	private Mat shadow = new Mat();
+	private volatile int shadowPixels;
+	
+	public BackgroundSubtractor()	{
+		this(modeOf(System.getProperty("hgcore.bgsub", "native")));
+	}//construct
+	
+	public BackgroundSubtractor(int mode)	{
+		this.mode = mode;
+	}//construct
+	
+	private static int modeOf(String name)	{
+		if("bulk".equalsIgnoreCase(name))
+			return BULK;
+		if("shadow".equalsIgnoreCase(name))
+			return SHADOW;
+		return NATIVE;
+	}//modeOf
+	
+	public void setModel(Mat frame)	{
+		frame.copyTo(model);
+		modelDirty = true;
+	}//setModel
+	
+	public void learn(Mat frame)	{
+		setModel(frame);
+	}//learn
+	
+	//the model never drifts, a relearn just takes a new snapshot
+	public void relearn(Mat frame)	{
+		setModel(frame);
+	}//relearn
+	
+	public Mat getModel()	{
+		return model;
+	}//getModel
+	
+	public void setThreshold(double value)	{
+		tresh = value;
+	}//setThreshold
+	
+	public double getThreshold()	{
+		return tresh;
+	}//getThreshold
+	
+	public void setMode(int mode)	{
+		this.mode = mode;
+	}//setMode
+	
+	public int getMode()	{
+		return mode;
+	}//getMode
+	
+	/*
+	 * SHADOW mode: a shadow keeps low to high of the model's brightness
+	 * (.4 and .95) and each normalised chromaticity within tolerance (.03).
+	 */
+	public void setShadow(double low, double high, double tolerance)	{
+		shadowLow = (int)Math.round(low * 256);
+		shadowHigh = (int)Math.round(high * 256);
+		chromaTol = (int)Math.round(tolerance * 256);
+	}//setShadow
+	
+	//1 channel 0/255 shadow mask of the last SHADOW frame
+	public Mat getShadowMask()	{
+		return shadow;
+	}//getShadowMask
+	
+	public int getShadowPixels()	{
+		return shadowPixels;
+	}//getShadowPixels
+	
+	/*
+	 * Writes the 3 channel mask for frame into out, out may be frame itself.
+	 * Both must be 8UC3, continuous and the size of the model.
+	 */
+	public void apply(Mat frame, Mat out)	{
+		if(mode == SHADOW)
+			applyShadow(frame, out);
+		else if(mode == BULK)
+			applyBulk(frame, out);
+		else
+			applyNative(frame, out);
+	}//apply
+	
+	private void applyNative(Mat frame, Mat out)	{
+		Core.absdiff(frame, model, diff);
+		//integer diffs: d >= tresh is the same as d > ceil(tresh) - 1
+		Imgproc.threshold(diff, diff, Math.ceil(tresh) - 1, 255, Imgproc.THRESH_BINARY);
+		
+		Core.split(diff, planes);
+		Core.bitwise_or(planes.get(0), planes.get(1), mask);
+		Core.bitwise_or(mask, planes.get(2), mask);
+		
+		merged.clear();
+		merged.add(mask);
+		merged.add(mask);
+		merged.add(mask);
+		Core.merge(merged, out);
+	}//applyNative
+	
+	private void applyBulk(Mat frame, Mat out)	{
+		int len = (int)(frame.total() * frame.channels());
+		if(framePx.length != len)	{
+			framePx = new byte[len];
+			modelDirty = true;
+		}//if
+		if(modelDirty)	{
+			//the running average model sets a new background every frame, reuse the array
+			if(modelPx.length != len)
+				modelPx = new byte[len];
+			model.get(0, 0, modelPx);
+			modelDirty = false;
+		}//if
+		frame.get(0, 0, framePx);
+		
+		final int t = (int)Math.ceil(tresh);
+		final byte[] f = framePx;
+		final byte[] m = modelPx;
+		final int stride = frame.cols() * 3;
+		RowBands.run(frame.rows(), frame.cols(), new RowBands.Band()	{
+			public void rows(int from, int to)	{
+				PixelKernels.mask(f, m, t, from * stride, to * stride);
+			}
+		});
+		
+		out.create(frame.rows(), frame.cols(), CvType.CV_8UC3);
+		out.put(0, 0, f);
+	}//applyBulk
+	
+	private void applyShadow(Mat frame, Mat out)	{
+		int len = (int)(frame.total() * frame.channels());
+		if(framePx.length != len)	{
+			framePx = new byte[len];
+			modelDirty = true;
+		}//if
+		if(modelDirty)	{
+			if(modelPx.length != len)
+				modelPx = new byte[len];
+			model.get(0, 0, modelPx);
+			modelDirty = false;
+		}//if
+		if(shadowPx.length != len / 3)
+			shadowPx = new byte[len / 3];
+		frame.get(0, 0, framePx);
+		
+		final int t = (int)Math.ceil(tresh);
+		final int lo = shadowLow, hi = shadowHigh, tol = chromaTol;
+		final byte[] f = framePx;
+		final byte[] m = modelPx;
+		final byte[] sh = shadowPx;
+		final int cols = frame.cols();
+		final int[] count = new int[1];
+		RowBands.run(frame.rows(), cols, new RowBands.Band()	{
+			public void rows(int from, int to)	{
+				int shadows = 0;
+				for(int p = from * cols, end = to * cols, i = p * 3; p < end; p++, i += 3)	{
+					int fb = f[i] & 0xff, fg = f[i + 1] & 0xff, fr = f[i + 2] & 0xff;
+					int mb = m[i] & 0xff, mg = m[i + 1] & 0xff, mr = m[i + 2] & 0xff;
+					byte v = 0, s = 0;
+					if(Math.abs(fb - mb) >= t || Math.abs(fg - mg) >= t || Math.abs(fr - mr) >= t)	{
+						int fs = fb + fg + fr, ms = mb + mg + mr;
+						//darker by a bounded ratio, chromaticity fb/fs against mb/ms
+						//as cross products so nothing is divided
+						long lim = (long)tol * fs * ms;
+						if(ms >= 30 && fs * 256 >= lo * ms && fs * 256 <= hi * ms
+								&& Math.abs((long)fb * ms - (long)mb * fs) * 256 <= lim
+								&& Math.abs((long)fg * ms - (long)mg * fs) * 256 <= lim
+								&& Math.abs((long)fr * ms - (long)mr * fs) * 256 <= lim)	{
+							s = (byte)255;
+							shadows++;
+						}//if
+						else
+							v = (byte)255;
+					}//if
+					f[i] = v;
+					f[i + 1] = v;
+					f[i + 2] = v;
+					sh[p] = s;
+				}//for
+				synchronized(count)	{
+					count[0] += shadows;
+				}//sync
+			}
+		});
+		shadowPixels = count[0];
+		
+		out.create(frame.rows(), frame.cols(), CvType.CV_8UC3);
+		out.put(0, 0, f);
+		shadow.create(frame.rows(), frame.cols(), CvType.CV_8UC1);
+		shadow.put(0, 0, sh);
+	}//applyShadow
+	
+}//class
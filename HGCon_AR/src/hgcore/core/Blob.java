@@ -0,0 +1,28 @@
+package hgcore.core;
+
+import org.opencv.core.Rect;
+
+/*
+ * One 8-connected component of a binary mask and its statistics: area
+ * (m00), first order moments (m10, m01), centroid and bounding box.
+ */
+public class Blob {
+	
+	public int label;
+	public int area;
+	public long m10, m01;
+	public int minX, minY, maxX, maxY;
+	
+	public double getCx()	{
+		return m10 / (double)area;
+	}//getCx
+	
+	public double getCy()	{
+		return m01 / (double)area;
+	}//getCy
+	
+	public Rect getBoundingBox()	{
+		return new Rect(minX, minY, maxX - minX + 1, maxY - minY + 1);
+	}//getBoundingBox
+	
+}//class
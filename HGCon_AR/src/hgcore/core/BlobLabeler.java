@@ -0,0 +1,187 @@
+package hgcore.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * Connected component labelling of a binary mask (non zero is set) with
+ * 8-connectivity, the same connectivity findContours traces. One raster
+ * scan assigns provisional labels, records equivalences in a union-find
+ * forest and accumulates each label's statistics on the way; the stats are
+ * then folded into their root labels, so the pixels are only visited once.
+ * All buffers are reused between frames.
+ */
+public class BlobLabeler {
+	
+	private int[] labels = new int[0];
+	private int[] parent = new int[256];
+	private int[] area = new int[256];
+	private long[] m10 = new long[256], m01 = new long[256];
+	private int[] minX = new int[256], minY = new int[256], maxX = new int[256], maxY = new int[256];
+	private int next;
+	private int cols, rows;
+	
+	private ArrayList<Blob> blobs = new ArrayList<Blob>();
+	
+	//label mask (rows x cols, one byte per pixel), blobs smaller than minArea are dropped
+	public ArrayList<Blob> label(byte[] mask, int rows, int cols, int minArea)	{
+		this.rows = rows;
+		this.cols = cols;
+		int n = rows * cols;
+		if(labels.length < n)
+			labels = new int[n];
+		next = 1;
+		
+		for(int y = 0; y < rows; y++)	{
+			int row = y * cols;
+			for(int x = 0; x < cols; x++)	{
+				int p = row + x;
+				if(mask[p] == 0)	{
+					labels[p] = 0;
+					continue;
+				}//if
+				
+				//already visited neighbours: W, NW, N, NE
+				int l = 0;
+				if(x > 0)
+					l = union(l, labels[p - 1]);
+				if(y > 0)	{
+					int up = p - cols;
+					if(x > 0)
+						l = union(l, labels[up - 1]);
+					l = union(l, labels[up]);
+					if(x < cols - 1)
+						l = union(l, labels[up + 1]);
+				}//if
+				if(l == 0)
+					l = newLabel(x, y);
+				labels[p] = l;
+				
+				area[l]++;
+				m10[l] += x;
+				m01[l] += y;
+				if(x < minX[l]) minX[l] = x;
+				if(x > maxX[l]) maxX[l] = x;
+				if(y < minY[l]) minY[l] = y;
+				if(y > maxY[l]) maxY[l] = y;
+			}//for
+		}//for
+		
+		//fold every provisional label into its root
+		for(int l = 1; l < next; l++)	{
+			int r = find(l);
+			if(r == l)
+				continue;
+			area[r] += area[l];
+			m10[r] += m10[l];
+			m01[r] += m01[l];
+			if(minX[l] < minX[r]) minX[r] = minX[l];
+			if(maxX[l] > maxX[r]) maxX[r] = maxX[l];
+			if(minY[l] < minY[r]) minY[r] = minY[l];
+			if(maxY[l] > maxY[r]) maxY[r] = maxY[l];
+		}//for
+		
+		blobs.clear();
+		for(int l = 1; l < next; l++)	{
+			if(parent[l] != l || area[l] < minArea)
+				continue;
+			Blob b = new Blob();
+			b.label = l;
+			b.area = area[l];
+			b.m10 = m10[l];
+			b.m01 = m01[l];
+			b.minX = minX[l];
+			b.minY = minY[l];
+			b.maxX = maxX[l];
+			b.maxY = maxY[l];
+			blobs.add(b);
+		}//for
+		return blobs;
+	}//label
+	
+	private int newLabel(int x, int y)	{
+		if(next == parent.length)	{
+			int size = next * 2;
+			parent = grow(parent, size);
+			area = grow(area, size);
+			minX = grow(minX, size);
+			minY = grow(minY, size);
+			maxX = grow(maxX, size);
+			maxY = grow(maxY, size);
+			m10 = Arrays.copyOf(m10, size);
+			m01 = Arrays.copyOf(m01, size);
+		}//if
+		int l = next++;
+		parent[l] = l;
+		area[l] = 0;
+		m10[l] = m01[l] = 0;
+		minX[l] = maxX[l] = x;
+		minY[l] = maxY[l] = y;
+		return l;
+	}//newLabel
+	
+	private static int[] grow(int[] a, int size)	{
+		return Arrays.copyOf(a, size);
+	}//grow
+	
+	private int find(int l)	{
+		int r = l;
+		while(parent[r] != r)
+			r = parent[r];
+		while(parent[l] != r)	{
+			int up = parent[l];
+			parent[l] = r;
+			l = up;
+		}//while
+		return r;
+	}//find
+	
+	//merge two labels (0 is none), the smaller root wins
+	private int union(int a, int b)	{
+		if(b == 0)
+			return a;
+		if(a == 0)
+			return find(b);
+		int ra = find(a), rb = find(b);
+		if(ra == rb)
+			return ra;
+		if(ra < rb)	{
+			parent[rb] = ra;
+			return ra;
+		}//if
+		parent[ra] = rb;
+		return rb;
+	}//union
+	
+	/*
+	 * The blob's pixels as 255 in a (w+2) x (h+2) byte image around its
+	 * bounding box, a one pixel border keeps the blob off the edge for
+	 * findContours. Only the bounding box is visited.
+	 */
+	public byte[] extract(Blob b, byte[] out)	{
+		int w = b.maxX - b.minX + 3;
+		int h = b.maxY - b.minY + 3;
+		if(out == null || out.length < w * h)
+			out = new byte[w * h];
+		Arrays.fill(out, 0, w * h, (byte)0);
+		for(int y = b.minY; y <= b.maxY; y++)	{
+			int row = y * cols;
+			int o = (y - b.minY + 1) * w + 1 - b.minX;
+			for(int x = b.minX; x <= b.maxX; x++)	{
+				int l = labels[row + x];
+				if(l != 0 && find(l) == b.label)
+					out[o + x] = (byte)255;
+			}//for
+		}//for
+		return out;
+	}//extract
+	
+	public int getRows()	{
+		return rows;
+	}//getRows
+	
+	public int getCols()	{
+		return cols;
+	}//getCols
+	
+}//class
@@ -0,0 +1,95 @@
+package hgcore.core;
+
+import java.util.Random;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/*
+ * Feeds MedianBootstrap synthetic scenes with the transients it has to
+ * keep out of the background and counts ghost pixels in what it bakes:
+ *
+ *   occluder  a block covering 3% of the frame walks across a still,
+ *             noisy background, over any one pixel for about 6 frames
+ *   ramp      the exposure climbs one level per frame for 30 frames,
+ *             then holds
+ *
+ * A ghost pixel is one more than GHOST levels off the true background in
+ * any channel. Both scenes should finish with none.
+ *
+ * usage: BootstrapCheck [width height]
+ */
+public class BootstrapCheck {
+	
+	private static final int GHOST = 16;
+	private static final int MAX_FRAMES = 60;
+	private static final int RAMP_FRAMES = 30;
+	
+	public static void main(String[] args)	{
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+		
+		int width = args.length > 1 ? Integer.parseInt(args[0]) : 160;
+		int height = args.length > 1 ? Integer.parseInt(args[1]) : 120;
+		
+		boolean ok = run("occluder", width, height, false);
+		ok &= run("ramp", width, height, true);
+		if(!ok)
+			System.exit(1);
+	}//main
+	
+	private static boolean run(String name, int width, int height, boolean ramp)	{
+		Random rnd = new Random(7);
+		int len = width * height * 3;
+		byte[] scene = new byte[len];
+		for(int i = 0; i < len; i++)
+			scene[i] = (byte)(60 + rnd.nextInt(120));
+		
+		//a block of a colour far from the scene, side chosen for 3% of the area
+		int side = (int)Math.round(Math.sqrt(width * height * 0.03));
+		int top = (height - side) / 2;
+		int speed = Math.max(1, side / 6);
+		
+		MedianBootstrap boot = new MedianBootstrap(MAX_FRAMES, 0.95);
+		Mat frame = new Mat(height, width, CvType.CV_8UC3);
+		byte[] px = new byte[len];
+		int n = 0;
+		boolean done = false;
+		while(!done)	{
+			int offset = ramp ? Math.min(n, RAMP_FRAMES) : RAMP_FRAMES;
+			for(int i = 0; i < len; i++)
+				px[i] = (byte)Math.max(0, Math.min(255, (scene[i] & 0xff) + offset - RAMP_FRAMES + rnd.nextInt(5) - 2));
+			if(!ramp)	{
+				int left = n * speed;
+				for(int y = top; y < top + side; y++)
+					for(int x = Math.max(0, left); x < Math.min(width, left + side); x++)	{
+						int i = (y * width + x) * 3;
+						px[i] = (byte)250;
+						px[i + 1] = (byte)10;
+						px[i + 2] = (byte)250;
+					}//for
+			}//if
+			frame.put(0, 0, px);
+			done = boot.add(frame);
+			n++;
+		}//while
+		
+		Mat bg = new Mat();
+		boot.getBackground(bg);
+		bg.get(0, 0, px);
+		int ghosts = 0;
+		for(int i = 0; i < len; i += 3)
+			for(int c = 0; c < 3; c++)
+				if(Math.abs((px[i + c] & 0xff) - (scene[i + c] & 0xff)) > GHOST)	{
+					ghosts++;
+					break;
+				}//if
+		frame.release();
+		bg.release();
+		
+		System.out.println(name + ": done after " + boot.getFrames() + " frames, confidence "
+				+ String.format("%.3f", boot.getConfidence()) + ", " + ghosts + " ghost pixels");
+		return ghosts == 0;
+	}//run
+	
+}//class
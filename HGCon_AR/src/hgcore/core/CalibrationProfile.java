@@ -0,0 +1,191 @@
+package hgcore.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+/*
+ * A named calibration: background frame, subtraction threshold, the HSV
+ * range CVHandRec segments with and the camera's ignore zones. Stored as
+ * one compact binary file (.hgp):
+ *
+ *   magic, version, name length + UTF-8 name, threshold,
+ *   HSV lower[3], HSV upper[3], width, height, Mat type,
+ *   background length + pixels, zone count, per zone: point count + x, y
+ *
+ * The background is optional (width/height 0). Version 1 files end after
+ * the background pixels (no length, no zones) and still load.
+ */
+public class CalibrationProfile {
+	
+	static final int MAGIC = 0x48474350;	// "HGCP"
+	static final int VERSION = 2;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	public String name;
+	public double threshold = 80;
+	public double[] hsvLower = { 58, 125, 0 };
+	public double[] hsvUpper = { 256, 256, 256 };
+	
+	public int width, height, type;
+	public byte[] background = new byte[0];
+	//ignore zone polygons, each x0, y0, x1, y1, ... in frame pixels
+	public ArrayList<int[]> zones = new ArrayList<int[]>();
+	
+	public CalibrationProfile(String name)	{
+		this.name = name;
+	}//construct
+	
+	public void setBackground(Mat frame)	{
+		width = frame.cols();
+		height = frame.rows();
+		type = frame.type();
+		background = new byte[(int)(frame.total() * frame.elemSize())];
+		frame.get(0, 0, background);
+	}//setBackground
+	
+	//null when the profile carries no background
+	public Mat getBackground()	{
+		if(width == 0 || height == 0)
+			return null;
+		Mat m = new Mat(height, width, type);
+		m.put(0, 0, background);
+		return m;
+	}//getBackground
+	
+	public Scalar getLower()	{
+		return new Scalar(hsvLower[0], hsvLower[1], hsvLower[2]);
+	}//getLower
+	
+	public Scalar getUpper()	{
+		return new Scalar(hsvUpper[0], hsvUpper[1], hsvUpper[2]);
+	}//getUpper
+	
+	public void save(File f) throws IOException	{
+		byte[] n = name.getBytes(UTF8);
+		int zoneBytes = 4;
+		for(int[] z : zones)
+			zoneBytes += 4 + z.length / 2 * 8;
+		ByteBuffer buf = ByteBuffer.allocate(4 + 4 + 4 + n.length + 8 + 6 * 8 + 3 * 4 + 4 + background.length + zoneBytes);
+		buf.putInt(MAGIC);
+		buf.putInt(VERSION);
+		buf.putInt(n.length);
+		buf.put(n);
+		buf.putDouble(threshold);
+		for(int i = 0; i < 3; i++)
+			buf.putDouble(hsvLower[i]);
+		for(int i = 0; i < 3; i++)
+			buf.putDouble(hsvUpper[i]);
+		buf.putInt(width);
+		buf.putInt(height);
+		buf.putInt(type);
+		buf.putInt(background.length);
+		buf.put(background);
+		buf.putInt(zones.size());
+		for(int[] z : zones)	{
+			//a trailing x without its y is dropped, the count has to match what follows
+			int points = z.length / 2;
+			buf.putInt(points);
+			for(int i = 0; i < points * 2; i++)
+				buf.putInt(z[i]);
+		}//for
+		buf.flip();
+		
+		//write next to the target and swap it in so a watcher never sees half a file
+		File tmp = new File(f.getPath() + ".tmp");
+		RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+		try	{
+			out.setLength(0);
+			FileChannel ch = out.getChannel();
+			while(buf.hasRemaining())
+				ch.write(buf);
+		}finally	{
+			out.close();
+		}//finally
+		Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}//save
+	
+	//bytes a width x height Mat of this type holds, -1 if the header can't describe one
+	private static long frameBytes(int width, int height, int type)	{
+		if(width < 0 || height < 0 || type < 0 || CvType.depth(type) > CvType.CV_64F)
+			return -1;
+		return (long)width * height * CvType.ELEM_SIZE(type);
+	}//frameBytes
+	
+	/*
+	 * One read of the whole file into the heap, no mapping: on Windows a live
+	 * mapping keeps save() and editors from replacing the file. Lengths are
+	 * checked before anything is allocated so a damaged file fails with an
+	 * IOException instead of a huge array or a background of the wrong size.
+	 */
+	public static CalibrationProfile load(File f) throws IOException	{
+		RandomAccessFile in = new RandomAccessFile(f, "r");
+		try	{
+			FileChannel ch = in.getChannel();
+			if(ch.size() > Integer.MAX_VALUE)
+				throw new IOException(f + " is too large for a calibration profile");
+			ByteBuffer buf = ByteBuffer.allocate((int)ch.size());
+			while(buf.hasRemaining())
+				if(ch.read(buf) < 0)
+					break;
+			buf.flip();
+			if(buf.getInt() != MAGIC)
+				throw new IOException(f + " is not a calibration profile");
+			int version = buf.getInt();
+			if(version != 1 && version != VERSION)
+				throw new IOException(f + " has an unsupported profile version");
+			
+			int len = buf.getInt();
+			if(len < 0 || len > buf.remaining())
+				throw new IOException(f + " has a damaged profile name");
+			byte[] n = new byte[len];
+			buf.get(n);
+			CalibrationProfile p = new CalibrationProfile(new String(n, UTF8));
+			p.threshold = buf.getDouble();
+			for(int i = 0; i < 3; i++)
+				p.hsvLower[i] = buf.getDouble();
+			for(int i = 0; i < 3; i++)
+				p.hsvUpper[i] = buf.getDouble();
+			p.width = buf.getInt();
+			p.height = buf.getInt();
+			p.type = buf.getInt();
+			len = version == 1 ? buf.remaining() : buf.getInt();
+			long expected = frameBytes(p.width, p.height, p.type);
+			if(expected < 0 || len != expected || len > buf.remaining())
+				throw new IOException(f + " has a background that doesn't match its " + p.width + "x" + p.height + " header");
+			p.background = new byte[len];
+			buf.get(p.background);
+			if(version > 1)	{
+				int count = buf.getInt();
+				if(count < 0 || count > buf.remaining() / 4)
+					throw new IOException(f + " has a damaged zone list");
+				for(int z = 0; z < count; z++)	{
+					int points = buf.getInt();
+					if(points < 0 || points > buf.remaining() / 8)
+						throw new IOException(f + " has a damaged ignore zone");
+					int[] poly = new int[points * 2];
+					for(int i = 0; i < poly.length; i++)
+						poly[i] = buf.getInt();
+					p.zones.add(poly);
+				}//for
+			}//if
+			return p;
+		}catch(BufferUnderflowException e)	{
+			throw new IOException(f + " is truncated");
+		}finally	{
+			in.close();
+		}//finally
+	}//load
+	
+}//class
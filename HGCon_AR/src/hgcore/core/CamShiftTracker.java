@@ -0,0 +1,139 @@
+package hgcore.core;
+
+import java.util.Arrays;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Scalar;
+import org.opencv.core.TermCriteria;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.video.Video;
+
+/*
+ * Hand tracking by histogram back-projection. calibrate() learns a 2D
+ * hue/saturation histogram from a box the hand was held in, so the skin
+ * model comes from the user and the lighting instead of fixed HSV bounds.
+ * track() then converts and back-projects only a search window around the
+ * last hand position and moves the window with CamShift, the rest of the
+ * frame is never touched.
+ */
+public class CamShiftTracker {
+	
+	//30 hue x 32 saturation bins
+	private MatOfInt channels = new MatOfInt(0, 1);
+	private MatOfInt bins = new MatOfInt(30, 32);
+	private MatOfFloat ranges = new MatOfFloat(0f, 180f, 0f, 256f);
+	//too dark or too grey pixels have no reliable hue
+	private Scalar lower = new Scalar(0, 60, 32);
+	private Scalar upper = new Scalar(180, 256, 256);
+	private TermCriteria criteria = new TermCriteria(TermCriteria.EPS | TermCriteria.COUNT, 10, 1);
+	
+	private Mat hist = new Mat();
+	private Mat hsv = new Mat();
+	private Mat valid = new Mat();
+	private Mat back = new Mat();
+	
+	private volatile boolean calibrated = false;
+	private Rect window;
+	private RotatedRect box;
+	private double margin = 0.5;
+	private int threshold = 32;
+	
+	//learn the hand colour from box in frame, tracking starts from that box
+	public void calibrate(Mat frame, Rect r)	{
+		Mat region = frame.submat(r);
+		Imgproc.cvtColor(region, hsv, Imgproc.COLOR_BGR2HSV);
+		Core.inRange(hsv, lower, upper, valid);
+		Imgproc.calcHist(Arrays.asList(hsv), channels, valid, hist, bins, ranges);
+		Core.normalize(hist, hist, 0, 255, Core.NORM_MINMAX);
+		region.release();
+		window = r.clone();
+		calibrated = true;
+	}//calibrate
+	
+	/*
+	 * Writes a 0/255 single channel hand mask of the frame's size into mask,
+	 * only the search window can be set. Returns the CamShift box, null
+	 * once the hand was lost (the next search covers the whole frame).
+	 */
+	public RotatedRect track(Mat frame, Mat mask)	{
+		int cols = frame.cols(), rows = frame.rows();
+		mask.create(rows, cols, CvType.CV_8UC1);
+		mask.setTo(new Scalar(0));
+		if(!calibrated)
+			return null;
+		
+		Rect search = searchWindow(cols, rows);
+		Mat region = frame.submat(search);
+		Imgproc.cvtColor(region, hsv, Imgproc.COLOR_BGR2HSV);
+		region.release();
+		Core.inRange(hsv, lower, upper, valid);
+		Imgproc.calcBackProject(Arrays.asList(hsv), channels, hist, back, ranges, 1);
+		Core.bitwise_and(back, valid, back);
+		
+		Rect local = new Rect(window.x - search.x, window.y - search.y, window.width, window.height);
+		RotatedRect found = Video.CamShift(back, local, criteria);
+		if(local.width <= 1 || local.height <= 1)	{
+			//lost, look everywhere next frame
+			window = new Rect(0, 0, cols, rows);
+			box = null;
+			return null;
+		}//if
+		window = new Rect(local.x + search.x, local.y + search.y, local.width, local.height);
+		found.center.x += search.x;
+		found.center.y += search.y;
+		box = found;
+		
+		Mat out = mask.submat(search);
+		Imgproc.threshold(back, out, threshold, 255, Imgproc.THRESH_BINARY);
+		out.release();
+		return found;
+	}//track
+	
+	//last window grown by the margin on every side, inside the frame
+	private Rect searchWindow(int cols, int rows)	{
+		int mx = (int)(window.width * margin);
+		int my = (int)(window.height * margin);
+		int x0 = Math.max(0, window.x - mx);
+		int y0 = Math.max(0, window.y - my);
+		int x1 = Math.min(cols, window.x + window.width + mx);
+		int y1 = Math.min(rows, window.y + window.height + my);
+		if(x1 - x0 < 2 || y1 - y0 < 2)
+			return new Rect(0, 0, cols, rows);
+		return new Rect(x0, y0, x1 - x0, y1 - y0);
+	}//searchWindow
+	
+	public boolean isCalibrated()	{
+		return calibrated;
+	}//isCalibrated
+	
+	//forget the histogram, back to calibration
+	public void reset()	{
+		calibrated = false;
+		box = null;
+	}//reset
+	
+	public Rect getWindow()	{
+		return window;
+	}//getWindow
+	
+	public RotatedRect getBox()	{
+		return box;
+	}//getBox
+	
+	//search window growth per side as a fraction of the window (default .5)
+	public void setMargin(double margin)	{
+		this.margin = margin;
+	}//setMargin
+	
+	//back-projection value (0-255) counted as hand in the mask
+	public void setThreshold(int threshold)	{
+		this.threshold = threshold;
+	}//setThreshold
+	
+}//class
@@ -0,0 +1,30 @@
+package hgcore.core;
+
+import org.opencv.core.Mat;
+import org.opencv.highgui.Highgui;
+import org.opencv.highgui.VideoCapture;
+
+public class CameraFrameSource implements FrameSource {
+	
+	private VideoCapture capture;
+	
+	public CameraFrameSource(int device)	{
+		capture = new VideoCapture(device);
+		capture.set(Highgui.CV_CAP_PROP_FRAME_WIDTH,10);
+		capture.set(Highgui.CV_CAP_PROP_FRAME_HEIGHT, 15);
+	}//construct
+	
+	public boolean read(Mat frame)	{
+		//the driver paces a live camera for us, false once the device is gone
+		return capture.read(frame);
+	}//read
+	
+	public boolean isLive()	{
+		return true;
+	}//isLive
+	
+	public void release()	{
+		capture.release();
+	}//release
+	
+}//class
@@ -0,0 +1,136 @@
+package hgcore.core;
+
+import java.util.Arrays;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/*
+ * Codebook background: every pixel keeps up to CODEWORDS colour boxes it
+ * has seen. A pixel matching a box that has been seen often enough is
+ * background, anything else is foreground and starts a new box which gets
+ * promoted once it keeps showing up (a moved chair becomes background,
+ * a hand passing through doesn't). Boxes not seen for STALE frames are
+ * recycled. Everything lives in flat primitive arrays and is updated in
+ * place.
+ */
+public class CodebookModel implements BackgroundModel {
+	
+	private static final int CODEWORDS = 4;
+	private static final int PROMOTE = 30;	// hits before a box counts as background
+	private static final int STALE = 600;	// frames
+	
+	private int pixels = 0;
+	private byte[] lo, hi;		// [pixel][codeword][channel]
+	private int[] hits, seen;	// [pixel][codeword]
+	private int frameNo = 0;
+	private int tolerance = 20;
+	
+	private byte[] px = new byte[0];
+	
+	public void learn(Mat frame)	{
+		int n = (int)frame.total();
+		if(n != pixels)	{
+			pixels = n;
+			lo = new byte[n * CODEWORDS * 3];
+			hi = new byte[n * CODEWORDS * 3];
+			hits = new int[n * CODEWORDS];
+			seen = new int[n * CODEWORDS];
+			px = new byte[n * 3];
+		}//if
+		Arrays.fill(hits, 0);
+		frameNo = 0;
+		
+		//the first frame is taken as background outright
+		frame.get(0, 0, px);
+		for(int p = 0; p < n; p++)	{
+			int w = p * CODEWORDS;
+			for(int c = 0; c < 3; c++)	{
+				lo[w * 3 + c] = px[p * 3 + c];
+				hi[w * 3 + c] = px[p * 3 + c];
+			}//for
+			hits[w] = PROMOTE;
+			seen[w] = 0;
+		}//for
+	}//learn
+	
+	public void apply(Mat frame, Mat out)	{
+		if((int)frame.total() != pixels)
+			learn(frame);
+		frameNo++;
+		frame.get(0, 0, px);
+		
+		final int tol = tolerance;
+		final int cols = frame.cols();
+		RowBands.run(frame.rows(), cols, new RowBands.Band()	{
+			public void rows(int from, int to)	{
+				update(from * cols, to * cols, tol);
+			}
+		});
+		
+		out.create(frame.rows(), frame.cols(), CvType.CV_8UC3);
+		out.put(0, 0, px);
+	}//apply
+	
+	//classify and update pixels [from, to), bands never share a pixel
+	private void update(int from, int to, int tol)	{
+		for(int p = from; p < to; p++)	{
+			int i = p * 3;
+			int b = px[i] & 0xff, g = px[i + 1] & 0xff, r = px[i + 2] & 0xff;
+			int base = p * CODEWORDS;
+			int match = -1;
+			int victim = base;
+			
+			for(int w = base; w < base + CODEWORDS; w++)	{
+				if(hits[w] == 0 || frameNo - seen[w] > STALE)	{
+					hits[w] = 0;
+					victim = w;
+					continue;
+				}//if
+				int j = w * 3;
+				if(b >= (lo[j] & 0xff) - tol && b <= (hi[j] & 0xff) + tol
+						&& g >= (lo[j + 1] & 0xff) - tol && g <= (hi[j + 1] & 0xff) + tol
+						&& r >= (lo[j + 2] & 0xff) - tol && r <= (hi[j + 2] & 0xff) + tol)	{
+					match = w;
+					break;
+				}//if
+				if(hits[victim] != 0 && hits[w] < hits[victim])
+					victim = w;
+			}//for
+			
+			byte v;
+			if(match >= 0)	{
+				int j = match * 3;
+				//grow the box toward the new sample
+				if(b < (lo[j] & 0xff)) lo[j] = (byte)b; else if(b > (hi[j] & 0xff)) hi[j] = (byte)b;
+				if(g < (lo[j + 1] & 0xff)) lo[j + 1] = (byte)g; else if(g > (hi[j + 1] & 0xff)) hi[j + 1] = (byte)g;
+				if(r < (lo[j + 2] & 0xff)) lo[j + 2] = (byte)r; else if(r > (hi[j + 2] & 0xff)) hi[j + 2] = (byte)r;
+				if(hits[match] < Integer.MAX_VALUE)
+					hits[match]++;
+				seen[match] = frameNo;
+				v = hits[match] >= PROMOTE ? 0 : (byte)255;
+			}//if
+			else	{
+				int j = victim * 3;
+				lo[j] = hi[j] = (byte)b;
+				lo[j + 1] = hi[j + 1] = (byte)g;
+				lo[j + 2] = hi[j + 2] = (byte)r;
+				hits[victim] = 1;
+				seen[victim] = frameNo;
+				v = (byte)255;
+			}//else
+			
+			px[i] = px[i + 1] = px[i + 2] = v;
+		}//for
+	}//update
+	
+	public void relearn(Mat frame)	{
+		learn(frame);
+	}//relearn
+	
+	//the 0-255 slider maps onto a +-value/4 box tolerance
+	public void setThreshold(double value)	{
+		tolerance = (int)(value / 4);
+	}//setThreshold
+	
+}//class
@@ -0,0 +1,112 @@
+package hgcore.core;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/*
+ * Skin/glove segmentation by table lookup. A ColorRange is compiled into
+ * one bit for every 24 bit BGR colour (2^24 bits, 2 MB), after that
+ * segmenting a frame is a single lookup per pixel with no colour conversion.
+ * Tables are built on a background thread and swapped in atomically, the
+ * frame loop keeps using the old one until the new one is done.
+ */
+public class ColorClassifier {
+	
+	private static final int WORDS = (1 << 24) / 64;
+	
+	private volatile long[] table;
+	private final AtomicReference<ColorRange> wanted = new AtomicReference<ColorRange>();
+	private final ExecutorService builder = Executors.newSingleThreadExecutor(new ThreadFactory()	{
+		public Thread newThread(Runnable r)	{
+			Thread t = new Thread(r, "LUT Builder");
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		}
+	});
+	
+	private byte[] px = new byte[0];
+	private byte[] maskPx = new byte[0];
+	
+	//queue a rebuild, only the newest range asked for gets built
+	public void compile(ColorRange range)	{
+		if(wanted.getAndSet(range) != null)
+			return;	// a build is already queued, it will pick this range up
+		builder.submit(new Runnable()	{
+			public void run()	{
+				ColorRange r;
+				while((r = wanted.get()) != null)	{
+					long[] t = build(r);
+					if(wanted.compareAndSet(r, null))
+						table = t;
+				}//while
+			}
+		});
+	}//compile
+	
+	public static long[] build(ColorRange range)	{
+		long[] t = new long[WORDS];
+		for(int b = 0; b < 256; b++)
+			for(int g = 0; g < 256; g++)	{
+				int base = (b << 16) | (g << 8);
+				for(int r = 0; r < 256; r++)
+					if(range.contains(b, g, r))
+						t[(base | r) >>> 6] |= 1L << (base | r);
+			}//for
+		return t;
+	}//build
+	
+	//a table built elsewhere (AdaptiveSkinModel), replaces the current one
+	public void install(long[] t)	{
+		table = t;
+	}//install
+	
+	public boolean isReady()	{
+		return table != null;
+	}//isReady
+	
+	/*
+	 * Writes the 3 channel 0/255 colour mask of frame into mask. With and
+	 * set, mask already holds a mask (the background subtraction) and only
+	 * pixels set in both survive.
+	 */
+	public void apply(Mat frame, Mat mask, final boolean and)	{
+		final long[] t = table;
+		if(t == null)
+			return;
+		
+		int len = (int)(frame.total() * frame.channels());
+		if(px.length != len)	{
+			px = new byte[len];
+			maskPx = new byte[len];
+		}//if
+		frame.get(0, 0, px);
+		if(and)
+			mask.get(0, 0, maskPx);
+		
+		final byte[] f = px;
+		final byte[] m = maskPx;
+		final int stride = frame.cols() * 3;
+		RowBands.run(frame.rows(), frame.cols(), new RowBands.Band()	{
+			public void rows(int from, int to)	{
+				for(int i = from * stride, end = to * stride; i < end; i += 3)	{
+					int idx = ((f[i] & 0xff) << 16) | ((f[i + 1] & 0xff) << 8) | (f[i + 2] & 0xff);
+					boolean hit = (t[idx >>> 6] & (1L << idx)) != 0 && (!and || m[i] != 0);
+					byte v = hit ? (byte)255 : 0;
+					m[i] = v;
+					m[i + 1] = v;
+					m[i + 2] = v;
+				}//for
+			}
+		});
+		
+		mask.create(frame.rows(), frame.cols(), CvType.CV_8UC3);
+		mask.put(0, 0, m);
+	}//apply
+	
+}//class
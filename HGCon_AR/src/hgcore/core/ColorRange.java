@@ -0,0 +1,60 @@
+package hgcore.core;
+
+/*
+ * An inclusive box in HSV or YCrCb, in OpenCV's 8 bit conventions (H is
+ * 0-180, everything else 0-255), the same bounds Core.inRange would take
+ * after cvtColor (up to OpenCV's fixed point rounding on the box edges).
+ */
+public class ColorRange {
+	
+	public static final int HSV = 0;
+	public static final int YCRCB = 1;
+	
+	public final int space;
+	public final double[] lower;
+	public final double[] upper;
+	
+	public ColorRange(int space, double[] lower, double[] upper)	{
+		this.space = space;
+		this.lower = lower.clone();
+		this.upper = upper.clone();
+	}//construct
+	
+	public boolean contains(int b, int g, int r)	{
+		int c0, c1, c2;
+		if(space == YCRCB)	{
+			double y = 0.299 * r + 0.587 * g + 0.114 * b;
+			c0 = clamp((int)Math.round(y));
+			c1 = clamp((int)Math.round((r - y) * 0.713 + 128));
+			c2 = clamp((int)Math.round((b - y) * 0.564 + 128));
+		}//if
+		else	{
+			int v = Math.max(b, Math.max(g, r));
+			int min = Math.min(b, Math.min(g, r));
+			int diff = v - min;
+			double h = 0;
+			if(diff > 0)	{
+				if(v == r)
+					h = 60.0 * (g - b) / diff;
+				else if(v == g)
+					h = 120 + 60.0 * (b - r) / diff;
+				else
+					h = 240 + 60.0 * (r - g) / diff;
+				if(h < 0)
+					h += 360;
+			}//if
+			c0 = (int)Math.round(h / 2);
+			c1 = v == 0 ? 0 : (int)Math.round(255.0 * diff / v);
+			c2 = v;
+		}//else
+		
+		return c0 >= lower[0] && c0 <= upper[0]
+				&& c1 >= lower[1] && c1 <= upper[1]
+				&& c2 >= lower[2] && c2 <= upper[2];
+	}//contains
+	
+	private static int clamp(int v)	{
+		return v < 0 ? 0 : v > 255 ? 255 : v;
+	}//clamp
+	
+}//class
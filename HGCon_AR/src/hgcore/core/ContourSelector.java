@@ -0,0 +1,162 @@
+package hgcore.core;
+
+import java.util.List;
+
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+/*
+ * Picks the largest contour without an exact area for every speck. Each
+ * contour goes through cheap tiers first: its point count, then its
+ * bounding box area (an upper bound of the contour area). Simplified
+ * contours can be large with very few points, so keep minPoints at the
+ * point count of a box (4) and leave size to the box tier. The survivors
+ * sit in a small min-heap keyed by box area, only those K get
+ * contourArea, in descending box order until no box can beat the best
+ * exact area. Rejections per tier are counted for the status display.
+ */
+public class ContourSelector {
+	
+	private int minPoints;
+	private double minBoxArea;
+	private int k;
+	
+	//heap entries: box area << 32 | contour index
+	private long[] heap;
+	private int size;
+	
+	private volatile long candidates, byPoints, byBox, byHeap, exact;
+	
+	public ContourSelector(int minPoints, double minBoxArea, int k)	{
+		this.minPoints = minPoints;
+		this.minBoxArea = minBoxArea;
+		this.k = Math.max(1, k);
+		heap = new long[this.k];
+	}//construct
+	
+	//bounding boxes under this many pixels never reach the heap
+	public void setMinBoxArea(double area)	{
+		minBoxArea = area;
+	}//setMinBoxArea
+	
+	//index of the contour with the largest area, -1 if every one was rejected
+	public int select(List<MatOfPoint> contours)	{
+		size = 0;
+		long points = 0, boxes = 0, evicted = 0;
+		for(int i = 0; i < contours.size(); i++)	{
+			MatOfPoint c = contours.get(i);
+			if(c.rows() < minPoints)	{
+				points++;
+				continue;
+			}//if
+			Rect r = Imgproc.boundingRect(c);
+			long box = (long)r.width * r.height;
+			if(box < minBoxArea)	{
+				boxes++;
+				continue;
+			}//if
+			if(size == k)	{
+				evicted++;
+				if(box <= heap[0] >>> 32)
+					continue;
+				heap[0] = box << 32 | i;
+				down(0);
+			}//if
+			else	{
+				heap[size] = box << 32 | i;
+				up(size++);
+			}//else
+		}//for
+		
+		//heapsort in place: smallest boxes go to the back, largest ends up first
+		int n = size;
+		while(size > 1)	{
+			long top = heap[0];
+			heap[0] = heap[--size];
+			heap[size] = top;
+			down(0);
+		}//while
+		
+		int best = -1;
+		double bestArea = -1;
+		long areas = 0;
+		for(int j = 0; j < n; j++)	{
+			long e = heap[j];
+			if((e >>> 32) <= bestArea)
+				break;
+			int idx = (int)e;
+			double a = Imgproc.contourArea(contours.get(idx));
+			areas++;
+			if(a > bestArea)	{
+				bestArea = a;
+				best = idx;
+			}//if
+		}//for
+		
+		candidates += contours.size();
+		byPoints += points;
+		byBox += boxes;
+		byHeap += evicted;
+		exact += areas;
+		return best;
+	}//select
+	
+	//min-heap on box area
+	private void up(int i)	{
+		long e = heap[i];
+		while(i > 0)	{
+			int p = (i - 1) >> 1;
+			if(heap[p] <= e)
+				break;
+			heap[i] = heap[p];
+			i = p;
+		}//while
+		heap[i] = e;
+	}//up
+	
+	private void down(int i)	{
+		long e = heap[i];
+		for(;;)	{
+			int c = 2 * i + 1;
+			if(c >= size)
+				break;
+			if(c + 1 < size && heap[c + 1] < heap[c])
+				c++;
+			if(heap[c] >= e)
+				break;
+			heap[i] = heap[c];
+			i = c;
+		}//for
+		heap[i] = e;
+	}//down
+	
+	public long getCandidates()	{
+		return candidates;
+	}//getCandidates
+	
+	//rejected for having fewer than minPoints points
+	public long getRejectedByPoints()	{
+		return byPoints;
+	}//getRejectedByPoints
+	
+	//rejected for a bounding box under minBoxArea
+	public long getRejectedByBox()	{
+		return byBox;
+	}//getRejectedByBox
+	
+	//pushed out of (or never let into) the top K
+	public long getRejectedByHeap()	{
+		return byHeap;
+	}//getRejectedByHeap
+	
+	//contourArea calls actually made
+	public long getExactAreas()	{
+		return exact;
+	}//getExactAreas
+	
+	public void resetMetrics()	{
+		candidates = byPoints = byBox = byHeap = exact = 0;
+	}//resetMetrics
+	
+}//class
@@ -0,0 +1,140 @@
+package hgcore.core;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.objdetect.CascadeClassifier;
+import org.opencv.objdetect.Objdetect;
+
+/*
+ * Keeps the user's face out of the skin mask. Every interval frames a
+ * downscaled copy of the frame goes to a frontal face cascade on its own
+ * thread. The frame loop never waits for it, a frame due while the last
+ * detection is still running is simply skipped. The last faces found, inflated
+ * to cover hair, ears and neck, are blanked out of the mask before
+ * contours, so the face never competes with the hand.
+ */
+public class FaceExclusion {
+	
+	private final CascadeClassifier cascade;
+	private final int interval;
+	private double scale = 0.25;
+	private double inflate = 0.25;
+	
+	private Mat small = new Mat();
+	private Mat gray = new Mat();
+	private MatOfRect faces = new MatOfRect();
+	private final AtomicBoolean busy = new AtomicBoolean();
+	private volatile Rect[] zones = new Rect[0];
+	private long frames;
+	
+	private final ExecutorService detector = Executors.newSingleThreadExecutor(new ThreadFactory()	{
+		public Thread newThread(Runnable r)	{
+			Thread t = new Thread(r, "Face Detector");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	
+	//cascade is an OpenCV face cascade file, e.g. haarcascade_frontalface_alt.xml
+	public FaceExclusion(String cascade, int interval)	{
+		this.cascade = new CascadeClassifier(cascade);
+		if(this.cascade.empty())
+			System.out.println("Face cascade not loaded: " + cascade);
+		this.interval = Math.max(1, interval);
+	}//construct
+	
+	public boolean isLoaded()	{
+		return !cascade.empty();
+	}//isLoaded
+	
+	//called with every frame, hands one to the detector every interval frames
+	public void offer(Mat frame)	{
+		if(frames++ % interval != 0 || cascade.empty() || !busy.compareAndSet(false, true))
+			return;
+		//the copy is the only work on the frame thread, the worker owns small until done
+		Imgproc.resize(frame, small, new Size(), scale, scale, Imgproc.INTER_AREA);
+		final int cols = frame.cols(), rows = frame.rows();
+		try	{
+			detector.submit(new Runnable()	{
+				public void run()	{
+					try	{
+						detect(cols, rows);
+					}catch(Exception e)	{
+						System.out.println("Face detection failed: " + e.getMessage());
+					}finally	{
+						busy.set(false);
+					}//finally
+				}
+			});
+		}catch(RejectedExecutionException e)	{
+			//shut down from the UI thread while the frame loop was still using this instance
+			busy.set(false);
+		}//catch
+	}//offer
+	
+	private void detect(int cols, int rows)	{
+		Imgproc.cvtColor(small, gray, Imgproc.COLOR_BGR2GRAY);
+		Imgproc.equalizeHist(gray, gray);
+		int min = Math.max(12, gray.rows() / 10);
+		cascade.detectMultiScale(gray, faces, 1.1, 3, Objdetect.CASCADE_SCALE_IMAGE,
+				new Size(min, min), new Size());
+		
+		Rect[] found = faces.toArray();
+		Rect[] out = new Rect[found.length];
+		for(int i = 0; i < found.length; i++)	{
+			Rect f = found[i];
+			double w = f.width / scale, h = f.height / scale;
+			double dx = w * inflate, dy = h * inflate;
+			int x0 = (int)Math.max(0, f.x / scale - dx);
+			int y0 = (int)Math.max(0, f.y / scale - dy);
+			//twice as much below the chin for the neck
+			int x1 = (int)Math.min(cols, f.x / scale + w + dx);
+			int y1 = (int)Math.min(rows, f.y / scale + h + 2 * dy);
+			out[i] = new Rect(x0, y0, x1 - x0, y1 - y0);
+		}//for
+		zones = out;
+	}//detect
+	
+	//blank the last known faces out of mask (frame sized)
+	public void apply(Mat mask)	{
+		Rect[] z = zones;
+		for(int i = 0; i < z.length; i++)	{
+			Rect r = z[i];
+			if(r.width <= 0 || r.height <= 0 || r.x + r.width > mask.cols() || r.y + r.height > mask.rows())
+				continue;
+			Mat region = mask.submat(r);
+			region.setTo(new Scalar(0, 0, 0));
+			region.release();
+		}//for
+	}//apply
+	
+	//the excluded rectangles in frame coordinates
+	public Rect[] getZones()	{
+		return zones;
+	}//getZones
+	
+	//size of the detector's copy relative to the frame (default .25)
+	public void setScale(double scale)	{
+		this.scale = scale;
+	}//setScale
+	
+	//growth of each face rectangle per side as a fraction of its size (default .25)
+	public void setInflate(double inflate)	{
+		this.inflate = inflate;
+	}//setInflate
+	
+	public void shutdown()	{
+		detector.shutdownNow();
+	}//shutdown
+	
+}//class
@@ -0,0 +1,131 @@
+package hgcore.core;
+
+import org.opencv.core.Mat;
+
+/*
+ * Capture stage on its own thread. Frames are read into a fixed ring of
+ * preallocated Mats; the consumer always gets the newest one. For a live
+ * source a frame that was overwritten before anyone took it is dropped and
+ * counted, recorded sources block the grabber instead so nothing is lost.
+ */
+public class FrameGrabber extends Thread {
+	
+	private static final int RING_SIZE = 3;
+	
+	private FrameSource source;
+	private boolean dropOldest;
+	
+	private Mat[] ring = new Mat[RING_SIZE];
+	private long[] stamps = new long[RING_SIZE];	// System.nanoTime() at capture
+	private long[] seqs = new long[RING_SIZE];
+	private int latest = -1;	// newest complete frame
+	private int reading = -1;	// slot held by the consumer
+	private boolean fresh = false;
+	private boolean finished = false;
+	
+	private volatile long grabbed = 0;
+	private volatile long dropped = 0;
+	
+	public FrameGrabber(FrameSource source)	{
+		super("Capture");
+		setDaemon(true);
+		this.source = source;
+		dropOldest = source.isLive();
+		for(int i = 0; i < RING_SIZE; i++)
+			ring[i] = new Mat();
+	}//construct
+	
+	public void run()	{
+		while(!isInterrupted())	{
+			int slot;
+			synchronized(this)	{
+				if(!dropOldest)	{
+					try	{
+						while(fresh)
+							wait();
+					}catch(InterruptedException e)	{
+						break;
+					}//catch
+				}//if
+				slot = freeSlot();
+			}//sync
+			
+			//the slot is neither published nor being read, fill it unlocked
+			boolean ok = source.read(ring[slot]);
+			long stamp = System.nanoTime();
+			
+			synchronized(this)	{
+				if(!ok)
+					break;
+				if(fresh)
+					dropped++;
+				stamps[slot] = stamp;
+				seqs[slot] = grabbed;
+				latest = slot;
+				fresh = true;
+				grabbed++;
+				notifyAll();
+			}//sync
+		}//while
+		
+		synchronized(this)	{
+			finished = true;
+			notifyAll();
+		}//sync
+		source.release();
+	}//run
+	
+	private int freeSlot()	{
+		for(int i = 0; i < RING_SIZE; i++)
+			if(i != latest && i != reading)
+				return i;
+		return -1; //can't happen with three slots
+	}//freeSlot
+	
+	/*
+	 * Blocks until a frame newer than the last one handed out is ready. The
+	 * returned Mat belongs to the ring, it stays valid until the next
+	 * acquire() and must not be released. Returns null once the source is
+	 * exhausted.
+	 */
+	public synchronized Mat acquire()	{
+		reading = -1;
+		notifyAll();
+		try	{
+			while(!fresh && !finished)
+				wait();
+		}catch(InterruptedException e)	{
+			Thread.currentThread().interrupt();
+			return null;
+		}//catch
+		if(!fresh)
+			return null;
+		
+		reading = latest;
+		fresh = false;
+		notifyAll();
+		return ring[reading];
+	}//acquire
+	
+	//capture time and sequence number of the frame handed out by acquire()
+	public synchronized long getTimestamp()	{
+		return reading < 0 ? 0 : stamps[reading];
+	}//getTimestamp
+	
+	public synchronized long getSequence()	{
+		return reading < 0 ? -1 : seqs[reading];
+	}//getSequence
+	
+	public long getGrabbedFrames()	{
+		return grabbed;
+	}//getGrabbedFrames
+	
+	public long getDroppedFrames()	{
+		return dropped;
+	}//getDroppedFrames
+	
+	public void shutdown()	{
+		interrupt();
+	}//shutdown
+	
+}//class
@@ -0,0 +1,52 @@
+package hgcore.core;
+
+/*
+ * Keeps recorded sources at their original frame rate. In max speed mode
+ * the pacer does nothing so the pipeline runs as fast as the CPU allows.
+ */
+public class FramePacer {
+	
+	private long frameNanos;
+	private long nextFrame = 0;
+	private boolean maxSpeed;
+	
+	public FramePacer(double fps, boolean maxSpeed)	{
+		setFps(fps);
+		this.maxSpeed = maxSpeed;
+	}//construct
+	
+	public void setFps(double fps)	{
+		if(fps <= 0)
+			fps = 30;
+		frameNanos = (long)(1000000000L / fps);
+	}//setFps
+	
+	public void pace()	{
+		if(maxSpeed)
+			return;
+		
+		long now = System.nanoTime();
+		if(nextFrame == 0 || now - nextFrame > frameNanos)	{
+			//first frame or we fell behind, don't try to catch up
+			nextFrame = now + frameNanos;
+			return;
+		}//if
+		
+		long wait = nextFrame - now;
+		if(wait > 0)	{
+			try	{
+				Thread.sleep(wait / 1000000L, (int)(wait % 1000000L));
+			}catch(InterruptedException e){ Thread.currentThread().interrupt(); }
+		}//if
+		nextFrame += frameNanos;
+	}//pace
+	
+	public boolean isMaxSpeed()	{
+		return maxSpeed;
+	}//isMaxSpeed
+	
+	public void setMaxSpeed(boolean maxSpeed)	{
+		this.maxSpeed = maxSpeed;
+	}//setMaxSpeed
+	
+}//class
@@ -0,0 +1,21 @@
+package hgcore.core;
+
+import org.opencv.core.Mat;
+
+/*
+ * Where HG_Core pulls its frames from. read() fills the given Mat with the
+ * next BGR frame and returns false once the source is exhausted (end of a
+ * recorded file or image sequence), a live camera only when the device
+ * fails.
+ * Live sources may drop frames when the pipeline falls behind, recorded
+ * ones must hand over every frame.
+ */
+public interface FrameSource {
+	
+	public boolean read(Mat frame);
+	
+	public boolean isLive();
+	
+	public void release();
+	
+}//interface
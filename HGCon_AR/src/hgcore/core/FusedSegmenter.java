@@ -0,0 +1,175 @@
+package hgcore.core;
+
+import java.util.ArrayList;
+
+/*
+ * The hand segmentation in plain Java, no OpenCV calls at all, so it runs
+ * where the native library can't be loaded. Colour lookup (a ColorClassifier
+ * table), the optional background difference, the dilate/erode clean-up
+ * and the mask write are fused into one streaming pass: every band of rows
+ * keeps a few rows of rings (2r+1 rows per morphology step), each frame row
+ * is read and classified once and every intermediate stays in cache. The
+ * mask is then labelled by BlobLabeler.
+ *
+ * Output matches the native path in HG_Core (classifier.apply, then
+ * CVHandRec's gray + MorphologyStage defaults + labelHand): a 0/255 single
+ * channel mask and the blobs above the minimum area. Morphology is the
+ * rectangular dilate then erode MorphologyStage starts with, pixels
+ * outside the frame never count, as with OpenCV's default border.
+ */
+public class FusedSegmenter {
+	
+	private final int rd, re;	// dilate and erode radius
+	private volatile long[] table;
+	private byte[] model;
+	private int tresh = 80;
+	private int minArea = 600;
+	
+	private byte[] mask = new byte[0];
+	private BlobLabeler labeler = new BlobLabeler();
+	private ArrayList<Blob> blobs = new ArrayList<Blob>();
+	
+	//square rect sizes like MorphologyStage (odd, 1 or less skips the step), defaults 5 and 3
+	public FusedSegmenter(int dilate, int erode)	{
+		rd = Math.max(0, dilate / 2);
+		re = Math.max(0, erode / 2);
+	}//construct
+	
+	public FusedSegmenter()	{
+		this(5, 3);
+	}//construct
+	
+	//2^24 bit BGR table from ColorClassifier.build, null classifies every pixel as skin
+	public void setTable(long[] table)	{
+		this.table = table;
+	}//setTable
+	
+	//background frame (BGR, frame sized) to AND with, null for colour only
+	public void setBackground(byte[] model, double tresh)	{
+		this.model = model;
+		this.tresh = (int)Math.ceil(tresh);
+	}//setBackground
+	
+	public void setMinArea(int minArea)	{
+		this.minArea = minArea;
+	}//setMinArea
+	
+	//frame is BGR rows x cols, returns the blobs of the mask (getMask())
+	public ArrayList<Blob> segment(final byte[] frame, final int rows, final int cols)	{
+		if(mask.length != rows * cols)
+			mask = new byte[rows * cols];
+		final byte[] out = mask;
+		final long[] t = table;
+		final byte[] m = model;
+		final int th = tresh;
+		RowBands.run(rows, cols, new RowBands.Band()	{
+			public void rows(int from, int to)	{
+				band(frame, m, t, th, out, rows, cols, from, to);
+			}
+		});
+		blobs = labeler.label(out, rows, cols, minArea);
+		return blobs;
+	}//segment
+	
+	private void band(byte[] f, byte[] m, long[] t, int th, byte[] out, int rows, int cols, int from, int to)	{
+		int hr = 2 * rd + 1, er = 2 * re + 1;
+		byte[] cls = new byte[cols];
+		byte[] col = new byte[cols];
+		byte[][] hRing = new byte[hr][cols];	// classified + dilated across
+		byte[][] eRing = new byte[er][cols];	// dilated down + eroded across
+		
+		int hNext = Math.max(0, from - re - rd);
+		int dNext = Math.max(0, from - re);
+		for(int o = from; o < to; o++)	{
+			int dNeed = Math.min(rows, o + re + 1);
+			while(dNext < dNeed)	{
+				int hNeed = Math.min(rows, dNext + rd + 1);
+				while(hNext < hNeed)	{
+					classify(f, m, t, th, hNext * cols, cols, cls);
+					maxAcross(cls, hRing[hNext % hr], cols, rd);
+					hNext++;
+				}//while
+				//dilate down: max of the ring rows in the frame
+				int y0 = Math.max(0, dNext - rd), y1 = Math.min(rows - 1, dNext + rd);
+				System.arraycopy(hRing[y0 % hr], 0, col, 0, cols);
+				for(int y = y0 + 1; y <= y1; y++)	{
+					byte[] r = hRing[y % hr];
+					for(int x = 0; x < cols; x++)
+						col[x] |= r[x];	// 0/255 only: max is or
+				}//for
+				minAcross(col, eRing[dNext % er], cols, re);
+				dNext++;
+			}//while
+			
+			//erode down straight into the mask
+			int y0 = Math.max(0, o - re), y1 = Math.min(rows - 1, o + re);
+			int base = o * cols;
+			System.arraycopy(eRing[y0 % er], 0, out, base, cols);
+			for(int y = y0 + 1; y <= y1; y++)	{
+				byte[] r = eRing[y % er];
+				for(int x = 0; x < cols; x++)
+					out[base + x] &= r[x];	// and is min
+			}//for
+		}//for
+	}//band
+	
+	//one frame row to 0/255: in the colour table and, with a model, changed by at least th
+	private static void classify(byte[] f, byte[] m, long[] t, int th, int p, int cols, byte[] cls)	{
+		for(int x = 0, i = p * 3; x < cols; x++, i += 3)	{
+			boolean hit = true;
+			if(t != null)	{
+				int idx = ((f[i] & 0xff) << 16) | ((f[i + 1] & 0xff) << 8) | (f[i + 2] & 0xff);
+				hit = (t[idx >>> 6] & (1L << idx)) != 0;
+			}//if
+			if(hit && m != null)	{
+				int b = (f[i] & 0xff) - (m[i] & 0xff);
+				int g = (f[i + 1] & 0xff) - (m[i + 1] & 0xff);
+				int r = (f[i + 2] & 0xff) - (m[i + 2] & 0xff);
+				hit = !(b < th && -b < th && g < th && -g < th && r < th && -r < th);
+			}//if
+			cls[x] = hit ? (byte)255 : 0;
+		}//for
+	}//classify
+	
+	static void maxAcross(byte[] in, byte[] out, int cols, int r)	{
+		for(int x = 0; x < cols; x++)	{
+			byte v = 0;
+			for(int k = Math.max(0, x - r), end = Math.min(cols - 1, x + r); k <= end; k++)
+				v |= in[k];
+			out[x] = v;
+		}//for
+	}//maxAcross
+	
+	static void minAcross(byte[] in, byte[] out, int cols, int r)	{
+		for(int x = 0; x < cols; x++)	{
+			byte v = (byte)255;
+			for(int k = Math.max(0, x - r), end = Math.min(cols - 1, x + r); k <= end; k++)
+				v &= in[k];
+			out[x] = v;
+		}//for
+	}//minAcross
+	
+	//0/255 single channel mask of the last frame
+	public byte[] getMask()	{
+		return mask;
+	}//getMask
+	
+	public ArrayList<Blob> getBlobs()	{
+		return blobs;
+	}//getBlobs
+	
+	//largest blob of the last frame, null if none
+	public Blob getHand()	{
+		Blob hand = null;
+		for(Blob b : blobs)
+			if(hand == null || b.area > hand.area)
+				hand = b;
+		return hand;
+	}//getHand
+	
+	//the hand's pixels with a one pixel border, see BlobLabeler.extract
+	public byte[] extract(Blob b, byte[] out)	{
+		return labeler.extract(b, out);
+	}//extract
+	
+}//class
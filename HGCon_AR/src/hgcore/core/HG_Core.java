@@ -5,6 +5,7 @@ import java.awt.image.DataBufferByte;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 import javax.imageio.ImageIO;
 
@@ -19,14 +20,14 @@ import org.opencv.core.Point;
 import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
 import org.opencv.core.Size;
-import org.opencv.highgui.Highgui;
-import org.opencv.highgui.VideoCapture;
 import org.opencv.imgproc.Imgproc;
 
 public class HG_Core extends Thread{
 	private static final long serialVersionUID = 1L;
 	
 	BufferedImage image; 
+	private volatile StampedImage stamped;
+	private LatencyTracker latency = new LatencyTracker();
 	
 	public HG_Core()	{
 		super("Core");
@@ -35,8 +36,71 @@ public class HG_Core extends Thread{
 	
 	double ro, go, bo;
 	double[] rgbo;
-	double[] srcPx;
-	double[] mskPx;
+	
+	private BackgroundSubtractor bgSub = new BackgroundSubtractor();
+	private volatile BackgroundModel bgModel = bgSub;
+	private int plainMode = bgSub.getMode();
+	private BackgroundModel learnedModel;
+	private Mat model = new Mat();
+	//median of the first frames as the initial background, null grabs a single frame
+	private volatile MedianBootstrap bootstrap = new MedianBootstrap(60, 0.95);
+	private volatile Mat pendingBackground;
+	
+	//segmentation range for CVHandRec
+	private volatile Scalar hsvLower = new Scalar(58,125,0);
+	private volatile Scalar hsvUpper = new Scalar(256,256,256);
+	
+	private ColorClassifier classifier = new ColorClassifier();
+	private volatile boolean colourSegmentation = false;
+	private volatile boolean colourAndBackground = true;
+	//skin table re-learnt from confirmed hands, every 30 updates
+	private AdaptiveSkinModel skinModel = new AdaptiveSkinModel(classifier, 0.98, 30);
+	private volatile boolean adaptiveSkin = false;
+	
+	private volatile MorphologyStage morphology = new MorphologyStage();
+	private Mat hierarchy = new Mat();
+	
+	//hand by connected components instead of edges + every contour
+	private volatile boolean labelBlobs = true;
+	private volatile int minBlobArea = 600;
+	private BlobLabeler labeler = new BlobLabeler();
+	private byte[] maskBytes = new byte[0];
+	private byte[] blobBytes;
+	private Mat blobMask = new Mat();
+	private volatile Blob handBlob;
+	//coarse-to-fine search picks the region and level per frame when on
+	private PyramidSearch pyramid = new PyramidSearch();
+	private volatile boolean pyramidSearch = false;
+	private int recLevel;
+	/*
+	 * Point count and bounding box tiers before exact areas, top 4 kept.
+	 * CHAIN_APPROX_SIMPLE leaves a box-shaped blob with 4 points at any
+	 * detection level, so the point tier only drops lines and specks and the
+	 * level-scaled box tier does the size filtering.
+	 */
+	private ContourSelector selector = new ContourSelector(4, 600, 4);
+	
+	//hue/saturation back-projection tracking instead of background + threshold
+	private CamShiftTracker tracker = new CamShiftTracker();
+	private volatile boolean camShift = false;
+	private volatile int calibrateFrames = 0;
+	private Rect calibrationBox;
+	
+	//faces found off-thread are blanked out of the mask, null when off
+	private volatile FaceExclusion faceExclusion;
+	
+	//operator marked clutter, kept out of the mask and the detection region
+	private volatile IgnoreZones ignoreZones;
+	
+	//white balance + V equalisation ahead of segmentation, null when off
+	private volatile IlluminationNormalizer normalizer;
+	private IlluminationNormalizer appliedNormalizer;
+	private boolean relearnBackground = false;
+	
+	private TrueColorReveal reveal = new TrueColorReveal();
+	private IlluminationChangeDetector illumination = new IlluminationChangeDetector();
+	//off unless asked for, a fixed background is never replaced behind the user's back
+	public boolean autoRelearn = false;
 	
 	//temp tresholding
 	private double tresh = 80;
@@ -73,6 +137,7 @@ public class HG_Core extends Thread{
 	 
 	 
 	 private int groundWidth;
+	 private volatile int frameWidth, frameHeight;
 	 private int groundHeight;
 	 
 	 private double vobPaneYBound;
@@ -86,13 +151,72 @@ public class HG_Core extends Thread{
 	 
 	int castX = 0;
 	int castY = 0;
+	
+	//pyramid level segmentation and hand geometry run on, 0 is full resolution
+	private volatile int detectLevel = 0;
+	private Mat detect = new Mat();
+	
+	//roi tracking around the last hand rect (full resolution coordinates)
+	private volatile boolean roiTracking = false;
+	private volatile double roiMargin = 0.5;
+	private Rect handRect;
+	
+	private FrameSource source;
+	private FrameGrabber grabber;
+	private volatile SessionRecorder recorder;
+	private volatile long processedFrames = 0;
+	private volatile long startNanos = 0;
+	
+	public HG_Core(FrameSource source)	{
+		this();
+		this.source = source;
+	}//construct
+	
+	//must be called before start(), defaults to the first camera
+	public void setFrameSource(FrameSource source)	{
+		this.source = source;
+	}//setFrameSource
+	
+	public long getProcessedFrames()	{
+		return processedFrames;
+	}//getProcessedFrames
+	
+	//raw frames straight from the capture loop, see SessionRecorder
+	public void startRecording(File out, int compression) throws IOException	{
+		stopRecording();
+		recorder = new SessionRecorder(out, compression, 0, 0);
+	}//startRecording
+	
+	public void stopRecording()	{
+		SessionRecorder rec = recorder;
+		recorder = null;
+		if(rec == null)
+			return;
+		try	{
+			rec.close();
+			System.out.println("Recorded " + rec.getFrameCount() + " frames");
+		}catch(IOException e)	{
+			e.printStackTrace();
+		}//catch
+	}//stopRecording
+	
+	//live frames overwritten before the pipeline got to them
+	public long getDroppedFrames()	{
+		return grabber == null ? 0 : grabber.getDroppedFrames();
+	}//getDroppedFrames
+	
+	//frames per second since the loop started
+	public double getThroughput()	{
+		double secs = (System.nanoTime() - startNanos) / 1e9;
+		return secs > 0 ? processedFrames / secs : 0;
+	}//getThroughput
+	
 	//main must be replaced with a run function after it becomes a Thread
 	public void run()	{
 		Mat webcam_image;// = new Mat(); // normal image
 		Mat ground;// = new Mat(); // converted image
-		VideoCapture capture = new VideoCapture(0);
-		capture.set(Highgui.CV_CAP_PROP_FRAME_WIDTH,10);
-		capture.set(Highgui.CV_CAP_PROP_FRAME_HEIGHT, 15);
+		if(source == null)
+			source = new CameraFrameSource(0);
 		
 		 
 		
@@ -113,58 +237,135 @@ public class HG_Core extends Thread{
 		// problem with casting we get 0 size of image
 		
 		
-		Mat model = new Mat();
 		
 		
 		
+		grabber = new FrameGrabber(source);
+		grabber.start();
+		
+		ground = new Mat();
+		Mat display = new Mat();
 		boolean sing = true;
+		processedFrames = 0;
+		startNanos = System.nanoTime();
 		while(true)	{
 			
-			webcam_image = new Mat();
-			ground = new Mat();
 			cogExist = false;
-			capture.read(webcam_image);
+			//newest frame from the capture thread, owned by its ring
+			webcam_image = grabber.acquire();
+			if(webcam_image == null)
+				break;
+			
+			SessionRecorder rec = recorder;
+			if(rec != null)	{
+				try	{
+					rec.record(webcam_image, grabber.getTimestamp(), grabber.getSequence());
+				}catch(IOException e)	{
+					System.out.println("Recording stopped: " + e.getMessage());
+					recorder = null;
+				}//catch
+			}//if
+			//sessions are recorded as captured, everything after sees the normalised frame
+			IlluminationNormalizer norm = normalizer;
+			if(norm != null)	{
+				//tables stay put while a background learnt through them is in use
+				norm.setFrozen(learnedModel != null && !relearnBackground);
+				norm.apply(webcam_image);
+			}//if
+			if(norm != appliedNormalizer)	{
+				//switched on or off: the background was taken the other way
+				appliedNormalizer = norm;
+				relearnBackground = !sing;
+			}//if
 //			System.out.println("Frame Captured: Width " + 
 //		    webcam_image.width() + " Height " + webcam_image.height());
 			//Core.flip(webcam_image, webcam_image, 1); // flip image
 			
-		    ground = webcam_image.clone();
+		    webcam_image.copyTo(ground);
 		    //capturing a model image (one time only)
 		    if(sing)	{
-		    	capture.read(model);
+		    	MedianBootstrap boot = bootstrap;
+		    	if(boot != null && !boot.add(webcam_image))	{
+		    		//still learning the background, show the camera as it is
+		    		setGroundSize(720,480);
+		    		publish(webcam_image, display);
+		    		continue;
+		    	}//if
+		    	synchronized(model)	{
+		    		if(boot != null)	{
+		    			boot.getBackground(model);
+		    			System.out.println("Background from " + boot.getFrames() + " frames, confidence " + boot.getConfidence());
+		    		}//if
+		    		else
+		    			webcam_image.copyTo(model);
+		    	}//sync
 		    	//Core.flip(model, model, 1); // flip image
 		    	sing = false;
 		    }
 		    
+		    //hand histogram calibration: show the box, sample it when the countdown ends
+		    if(calibrateFrames > 0)	{
+		    	int w = webcam_image.cols(), h = webcam_image.rows();
+		    	if(calibrationBox == null)
+		    		calibrationBox = new Rect(w * 3 / 8, h * 3 / 8, w / 4, h / 4);
+		    	if(--calibrateFrames == 0)	{
+		    		tracker.calibrate(webcam_image, calibrationBox);
+		    		calibrationBox = null;
+		    	}//if
+		    	else	{
+		    		Core.rectangle(ground, calibrationBox.tl(), calibrationBox.br(), new Scalar(0,255,0), 2);
+		    		setGroundSize(720,480);
+		    		publish(ground, display);
+		    		continue;
+		    	}//else
+		    }//if
+		    boolean tracking = camShift && tracker.isCalibrated();
+		    
 		    
 		    /****************************************************************************************************
 		    *                NON-ADAPTIVE BACKGROUND SUBTRACITON
 		    *                                 START
 		    ****************************************************************************************************/
-		    if(backgroundSubtraction || filterCV)	{
-		    for (int i = 0; i < webcam_image.rows(); i++)
-				for (int j = 0; j < webcam_image.cols(); j++)	{
-					srcPx = ground.get(i,j);
-					mskPx = model.get(i,j);
-					double bp = mskPx[0];
-					double gp = mskPx[1];
-					double rp = mskPx[2];
-					double bc = srcPx[0];
-					double gc = srcPx[1];
-					double rc = srcPx[2];
-					
-					double b = Math.abs(bp - bc);
-					double g = Math.abs(gp - gc);
-					double r = Math.abs(rp - rc);
-					
-					// masking
-					if(b < tresh && g < tresh && r < tresh)
-						ground.put(i, j, new double[]{ 0, 0, 0 });
-					else //if(b > tresh && g > tresh && r > tresh)
-						ground.put(i, j, new double[]{ 255, 255, 255 });
-					//masking
-					
-				}//FOR
+		    if(tracking && filterCV)
+		    	tracker.track(webcam_image, ground);
+		    else if(backgroundSubtraction || filterCV)	{
+		    	Mat pb = pendingBackground;
+		    	if(pb != null)	{
+		    		//background from a calibration profile
+		    		pendingBackground = null;
+		    		if(pb.cols() == webcam_image.cols() && pb.rows() == webcam_image.rows() && pb.type() == webcam_image.type())	{
+		    			synchronized(model)	{
+		    				pb.copyTo(model);
+		    			}//sync
+		    			learnedModel = null;
+		    		}//if
+		    		else
+		    			//another camera or resolution, keep the threshold and HSV range but not the frame
+		    			System.out.println("Profile background is " + pb.cols() + "x" + pb.rows() + ", camera is " + webcam_image.cols() + "x" + webcam_image.rows() + ", ignoring it");
+		    		pb.release();
+		    	}//if
+		    	
+		    	BackgroundModel bg = bgModel;
+		    	if(bg != learnedModel)	{
+		    		//first frame, a profile load, or the model was swapped while running. model
+		    		//still holds the learned background, the live frame may have the hand in it
+		    		bg.learn(model);
+		    		learnedModel = bg;
+		    	}//if
+		    	bg.setThreshold(tresh);
+		    	bg.apply(ground, ground);
+		    	boolean changed = !relearnBackground && autoRelearn && illumination.check(webcam_image, ground);
+		    	if(changed && appliedNormalizer != null)
+		    		//rebuild the normaliser tables on the next frame and learn the background from that one
+		    		relearnBackground = true;
+		    	else if(relearnBackground || changed)	{
+		    		relearnBackground = false;
+		    		System.out.println("Lighting changed, relearning background");
+		    		synchronized(model)	{
+		    			webcam_image.copyTo(model);
+		    		}//sync
+		    		bg.relearn(model);
+		    	}//if
 		    }//if
 		    
 		    /****************************************************************************************************
@@ -172,42 +373,74 @@ public class HG_Core extends Thread{
 			    *                                 END
 			****************************************************************************************************/
 		    
+		    //skin colour by table lookup, kept only where the background says foreground
+		    if(colourSegmentation && filterCV && !tracking && classifier.isReady())
+		    	classifier.apply(webcam_image, ground, colourAndBackground);
+		    
+		    IgnoreZones zones = ignoreZones;
+		    if(zones != null && (filterCV || backgroundSubtraction))
+		    	zones.apply(ground);
+		    
+		    FaceExclusion faces = faceExclusion;
+		    if(faces != null && filterCV)	{
+		    	faces.offer(webcam_image);
+		    	faces.apply(ground);
+		    }//if
+		    
 		    if(filterCV)	{
 		    ArrayList<MatOfPoint> contours = new ArrayList<MatOfPoint>();
 		    ArrayList<MatOfPoint> convexHullMatOfPointArrayList = new ArrayList<MatOfPoint>();
 		    
 		    //Hand gesture recognition
+		    int level = detectLevel;
+		    boolean pyramidOn = pyramidSearch;
+		    //the pyramid search picks its own region, the tracked one would be thrown away
+		    Rect roi = roiTracking && !pyramidOn ? searchRoi(webcam_image.cols(), webcam_image.rows()) : null;
+		    if(pyramidOn)	{
+		    	roi = pyramid.search(ground);
+		    	//nothing found: the coarse level is all there is to show
+		    	level = roi == null ? pyramid.getCoarseLevel() : pyramid.getLevel();
+		    }//if
+		    if(zones != null)
+		    	roi = zones.clip(roi, webcam_image.cols(), webcam_image.rows());
+		    recLevel = level;
+		    if(level > 0 || roi != null)	{
+		    	//segment a region and/or pyramid level, paste the edge image back for display
+		    	Mat region = roi == null ? ground : ground.submat(roi);
+		    	if(level > 0)	{
+		    		Imgproc.pyrDown(region, detect);
+		    		for(int l = 1; l < level; l++)
+		    			Imgproc.pyrDown(detect, detect);
+		    	}//if
+		    	else
+		    		region.copyTo(detect);
+		    	CVHandRec(detect, contours, convexHullMatOfPointArrayList);
+		    	
+		    	if(roi == null)
+		    		Imgproc.resize(detect, ground, webcam_image.size(), 0, 0, Imgproc.INTER_NEAREST);
+		    	else	{
+		    		ground.create(webcam_image.rows(), webcam_image.cols(), CvType.CV_8UC1);
+		    		ground.setTo(new Scalar(0));
+		    		Imgproc.resize(detect, ground.submat(roi), roi.size(), 0, 0, Imgproc.INTER_NEAREST);
+		    	}//else
+		    }//if
+		    else
 		    ground = CVHandRec(ground, contours, convexHullMatOfPointArrayList);
 		    
 	    
 		    Imgproc.cvtColor(ground, ground, Imgproc.COLOR_GRAY2BGR);
 		    
 		    if(trueColorCV)	{
-		    //this makes the whole program delayed
 		    //reveal true image
-		    double[] hldd;
-		    for (int i = 0; i < webcam_image.rows(); i++)
-				for (int j = 0; j < webcam_image.cols(); j++)	{
-					hldd = ground.get(i,j);
-					if(hldd[0] == 0)
-						ground.put(i, j, webcam_image.get(i,j));
-				}//for
+		    reveal.apply(ground, webcam_image);
 		    }//if trueColor
 		    
 		    /************************************************************
 		     * *********************** DRAWING **************************
 		     * *********************************************************/
 
-		    double maxArea = -1;
-		    int maxAreaIdx = -1;
-		    for (int idx = 0; idx < contours.size(); idx++) {
-		        Mat contour = contours.get(idx);
-		        double contourarea = Imgproc.contourArea(contour);
-		        if (contourarea > maxArea) {
-		            maxArea = contourarea;
-		            maxAreaIdx = idx;
-		        }//if
-		    }//for
+		    selector.setMinBoxArea(minBlobArea >> (2 * level));
+		    int maxAreaIdx = selector.select(contours);
 		    
 		    ArrayList<MatOfPoint> largestContour = new ArrayList<MatOfPoint>();
 		    try	{
@@ -220,6 +453,21 @@ public class HG_Core extends Thread{
 		    
 		    convexHullMatOfPointArrayList = getHGCV(largestContour, convexHullMatOfPointArrayList);
 		    
+		    //geometry was found on the pyramid level / roi, map it back to full resolution
+		    if(level > 0 || roi != null)	{
+		    	double scale = 1 << level;
+		    	int ox = roi == null ? 0 : roi.x;
+		    	int oy = roi == null ? 0 : roi.y;
+		    	largestContour = scaleContours(largestContour, scale, ox, oy);
+		    	convexHullMatOfPointArrayList = scaleContours(convexHullMatOfPointArrayList, scale, ox, oy);
+		    	scalePoints(startPoints, scale, ox, oy);
+		    	scalePoints(endPoints, scale, ox, oy);
+		    	scalePoints(depthPoints, scale, ox, oy);
+		    }//if
+		    
+		    if(roiTracking)
+		    	trackRoi(largestContour, roi, webcam_image.cols(), webcam_image.rows());
+		    
 		    //contour
 		    if(viewContour)
 		    ground = drawCG(ground, largestContour, new Scalar(0,0,255), 1);
@@ -238,6 +486,10 @@ public class HG_Core extends Thread{
 		    if(viewBoundingRect)
 		    ground = boundBox(convexHullMatOfPointArrayList, ground);
 		    
+		    //a confirmed hand is a labelled sample of the current skin colour
+		    if(adaptiveSkin && fingerTips.size() == 5 && cogExist && !largestContour.isEmpty())
+		    	skinModel.update(webcam_image, largestContour.get(0));
+		    
 		    }//if filterCV
 		    
 		    
@@ -280,16 +532,38 @@ public class HG_Core extends Thread{
 		    	}//for
 		    }//if
 		    
-		    try	{
-		    Imgproc.resize(ground, ground, new Size(getGroundWidth(), getGroundHeight()));
-		    }catch(Exception e){}
-			image = matToBufferedImage(ground); // normal BGR Output
-			webcam_image.release();
-			ground.release();
+		    publish(ground, display);
 		}//while
+		
+		grabber.shutdown();
+		stopRecording();
+		ground.release();
+		display.release();
+		System.out.println("Processed " + processedFrames + " frames at " + getThroughput() + " fps");
+		System.out.println("Contours " + selector.getCandidates() + ": " + selector.getRejectedByPoints() + " by points, "
+				+ selector.getRejectedByBox() + " by box, " + selector.getRejectedByHeap() + " by top-K, "
+				+ selector.getExactAreas() + " exact areas");
+		IgnoreZones z = ignoreZones;
+		if(z != null && z.getFrames() > 0)
+			System.out.println("Ignore zones: " + z.getMaskedPixels() / z.getFrames() + " px masked, "
+					+ z.getSkippedPixels() / z.getFrames() + " px skipped per frame");
 	}//main
 	
 	
+	//hand the finished frame to the UI
+	private void publish(Mat src, Mat display)	{
+		frameWidth = src.cols();
+		frameHeight = src.rows();
+		//resize into its own buffer so src keeps the capture size
+		try	{
+		Imgproc.resize(src, display, new Size(getGroundWidth(), getGroundHeight()));
+		}catch(Exception e){}
+		image = matToBufferedImage(display); // normal BGR Output
+		stamped = new StampedImage(image, grabber.getTimestamp(), grabber.getSequence());
+		latency.published();
+		processedFrames++;
+	}//publish
+	
 	public Mat castVobListToPane(Mat src)	{
 		
 		for(int i = 0; i < vobCastList.size(); i++)	{
@@ -378,6 +652,90 @@ public class HG_Core extends Thread{
 		}
 	}//handDrawing
 	
+	//each level halves both sides, so the per-frame detection work drops by 4x per level
+	public void setDetectionLevel(int level)	{
+		detectLevel = Math.max(0, level);
+	}//setDetectionLevel
+	
+	public int getDetectionLevel()	{
+		return detectLevel;
+	}//getDetectionLevel
+	
+	private ArrayList<MatOfPoint> scaleContours(ArrayList<MatOfPoint> src, double scale, int ox, int oy)	{
+		ArrayList<MatOfPoint> out = new ArrayList<MatOfPoint>();
+		for(int i = 0; i < src.size(); i++)	{
+			Point[] pts = src.get(i).toArray();
+			for(int j = 0; j < pts.length; j++)	{
+				pts[j].x = pts[j].x * scale + ox;
+				pts[j].y = pts[j].y * scale + oy;
+			}//for
+			out.add(new MatOfPoint(pts));
+		}//for
+		return out;
+	}//scaleContours
+	
+	private void scalePoints(ArrayList<Point> pts, double scale, int ox, int oy)	{
+		for(int i = 0; i < pts.size(); i++)	{
+			pts.get(i).x = pts.get(i).x * scale + ox;
+			pts.get(i).y = pts.get(i).y * scale + oy;
+		}//for
+	}//scalePoints
+	
+	/*
+	 * Search only around where the hand was last frame. margin is a fraction
+	 * of the hand rect's larger side added on every edge.
+	 */
+	public void setRoiTracking(boolean on, double margin)	{
+		roiMargin = margin;
+		handRect = null;
+		roiTracking = on;
+	}//setRoiTracking
+	
+	public boolean isRoiTracking()	{
+		return roiTracking;
+	}//isRoiTracking
+	
+	//null means search the full frame
+	private Rect searchRoi(int cols, int rows)	{
+		Rect hand = handRect;
+		if(hand == null)
+			return null;
+		
+		int m = (int)(Math.max(hand.width, hand.height) * roiMargin) + 8;
+		int x1 = Math.max(0, hand.x - m);
+		int y1 = Math.max(0, hand.y - m);
+		int x2 = Math.min(cols, hand.x + hand.width + m);
+		int y2 = Math.min(rows, hand.y + hand.height + m);
+		//pyrDown needs something to work with
+		if(x2 - x1 < 16 || y2 - y1 < 16)
+			return null;
+		return new Rect(x1, y1, x2 - x1, y2 - y1);
+	}//searchRoi
+	
+	//remember the hand for the next frame, or drop back to a full search
+	private void trackRoi(ArrayList<MatOfPoint> hand, Rect roi, int cols, int rows)	{
+		if(hand.isEmpty())	{
+			handRect = null;	// lost it
+			return;
+		}//if
+		
+		Rect r = Imgproc.boundingRect(hand.get(0));
+		if(roi != null)	{
+			//the hand may continue past an roi edge that isn't the frame edge,
+			//slack in frame pixels for the level this frame was traced at
+			int slack = 2 << recLevel;
+			boolean clipped = (r.x <= roi.x + slack && roi.x > 0)
+					|| (r.y <= roi.y + slack && roi.y > 0)
+					|| (r.x + r.width >= roi.x + roi.width - slack && roi.x + roi.width < cols)
+					|| (r.y + r.height >= roi.y + roi.height - slack && roi.y + roi.height < rows);
+			if(clipped)	{
+				handRect = null;
+				return;
+			}//if
+		}//if
+		handRect = r;
+	}//trackRoi
+	
 	public void setThresh(double value)	{
 		tresh = value;
 	}//setThresh
@@ -386,36 +744,315 @@ public class HG_Core extends Thread{
 		return tresh;
 	}//get thresh
 	
+	/*
+	 * Coarse-to-fine search in place of the fixed detection level and roi
+	 * tracking: blobs on a coarse level, the winner refined level by level
+	 * down to the level its size calls for.
+	 */
+	public void setPyramidSearch(boolean on)	{
+		pyramidSearch = on;
+	}//setPyramidSearch
+	
+	public boolean isPyramidSearch()	{
+		return pyramidSearch;
+	}//isPyramidSearch
+	
+	//BackgroundSubtractor.NATIVE or BULK
+	public void setSubtractionMode(int mode)	{
+		bgSub.setMode(mode);
+	}//setSubtractionMode
+	
+	/*
+	 * Switches the fixed frame model to SHADOW, where cast shadows are
+	 * classified apart and kept out of the hand mask, or back to the mode
+	 * it had before. The other background models are not affected.
+	 */
+	public void setShadowSuppression(boolean on)	{
+		int mode = bgSub.getMode();
+		if(on && mode != BackgroundSubtractor.SHADOW)	{
+			plainMode = mode;
+			bgSub.setMode(BackgroundSubtractor.SHADOW);
+		}//if
+		else if(!on && mode == BackgroundSubtractor.SHADOW)
+			bgSub.setMode(plainMode);
+	}//setShadowSuppression
+	
+	//pixels classified as shadow on the last frame
+	public int getShadowPixels()	{
+		return bgSub.getShadowPixels();
+	}//getShadowPixels
+	
+	/*
+	 * Learn the initial background from up to maxFrames frames, starting as
+	 * soon as the given fraction of the frame has settled on the median. 0 or 1
+	 * frames grabs a single frame like before. Must be called before start().
+	 */
+	public void setBootstrap(int maxFrames, double confidence)	{
+		bootstrap = maxFrames > 1 ? new MedianBootstrap(maxFrames, confidence) : null;
+	}//setBootstrap
+	
+	public void setHSVRange(Scalar lower, Scalar upper)	{
+		hsvLower = lower;
+		hsvUpper = upper;
+		if(colourSegmentation)
+			classifier.compile(new ColorRange(ColorRange.HSV, lower.val, upper.val));
+	}//setHSVRange
+	
+	/*
+	 * Segment by the colour lookup table built from the HSV range (or a range
+	 * given to setColourRange), ANDed with the background mask unless
+	 * andBackground is false.
+	 */
+	public void setColourSegmentation(boolean on, boolean andBackground)	{
+		colourAndBackground = andBackground;
+		if(on && !colourSegmentation)
+			classifier.compile(new ColorRange(ColorRange.HSV, hsvLower.val, hsvUpper.val));
+		colourSegmentation = on;
+	}//setColourSegmentation
+	
+	public boolean isColourSegmentation()	{
+		return colourSegmentation;
+	}//isColourSegmentation
+	
+	/*
+	 * Keeps learning the skin colour from confirmed hands (five finger tips
+	 * and a centre) and swaps the rebuilt table into the colour lookup
+	 * segmentation, which has to be on for it to show.
+	 */
+	public void setAdaptiveSkin(boolean on)	{
+		if(on && !adaptiveSkin)
+			skinModel.reset();
+		adaptiveSkin = on;
+	}//setAdaptiveSkin
+	
+	public boolean isAdaptiveSkin()	{
+		return adaptiveSkin;
+	}//isAdaptiveSkin
+	
+	/*
+	 * Normalises every frame (gray-world white balance, V equalisation)
+	 * with tables rebuilt every interval frames. While a background model
+	 * is learnt the tables are frozen and only rebuilt together with it,
+	 * when this is switched or the lighting changes.
+	 */
+	public void setIlluminationNormalization(boolean on, int interval)	{
+		normalizer = on ? new IlluminationNormalizer(interval) : null;
+	}//setIlluminationNormalization
+	
+	public boolean isIlluminationNormalization()	{
+		return normalizer != null;
+	}//isIlluminationNormalization
+	
+	/*
+	 * Runs the given face cascade every interval frames on its own thread
+	 * and keeps the faces it finds out of the hand mask, null switches it
+	 * off.
+	 */
+	public void setFaceExclusion(String cascade, int interval)	{
+		FaceExclusion old = faceExclusion;
+		faceExclusion = cascade == null ? null : new FaceExclusion(cascade, interval);
+		if(old != null)
+			old.shutdown();
+	}//setFaceExclusion
+	
+	public FaceExclusion getFaceExclusion()	{
+		return faceExclusion;
+	}//getFaceExclusion
+	
+	//polygons (x0, y0, x1, y1, ... in frame pixels) that are never the hand, null or empty for none
+	public void setIgnoreZones(List<int[]> polygons)	{
+		ignoreZones = polygons == null || polygons.isEmpty() ? null : new IgnoreZones(polygons);
+	}//setIgnoreZones
+	
+	public IgnoreZones getIgnoreZones()	{
+		return ignoreZones;
+	}//getIgnoreZones
+	
+	//one more ignore polygon on top of the current ones
+	public void addIgnoreZone(int[] polygon)	{
+		IgnoreZones z = ignoreZones;
+		ArrayList<int[]> all = new ArrayList<int[]>();
+		if(z != null)
+			all.addAll(z.getPolygons());
+		all.add(polygon);
+		setIgnoreZones(all);
+	}//addIgnoreZone
+	
+	//size of the camera frames, 0 before the first one
+	public int getFrameWidth()	{
+		return frameWidth;
+	}//getFrameWidth
+	
+	public int getFrameHeight()	{
+		return frameHeight;
+	}//getFrameHeight
+	
+	//the clean-up applied to the hand mask before contours
+	public void setMorphology(MorphologyStage m)	{
+		morphology = m;
+	}//setMorphology
+	
+	public MorphologyStage getMorphology()	{
+		return morphology;
+	}//getMorphology
+	
+	//any HSV or YCrCb box, rebuilt off-thread
+	public void setColourRange(ColorRange range)	{
+		classifier.compile(range);
+	}//setColourRange
+	
+	/*
+	 * Takes over a calibration while running: threshold and HSV range right
+	 * away, the background on the next frame if it matches the camera's size.
+	 */
+	public void applyProfile(CalibrationProfile p)	{
+		tresh = p.threshold;
+		setHSVRange(p.getLower(), p.getUpper());
+		setIgnoreZones(p.zones);
+		Mat bg = p.getBackground();
+		if(bg != null)
+			pendingBackground = bg;
+	}//applyProfile
+	
+	//the current calibration under the given name
+	public CalibrationProfile makeProfile(String name)	{
+		CalibrationProfile p = new CalibrationProfile(name);
+		p.threshold = tresh;
+		p.hsvLower = hsvLower.val.clone();
+		p.hsvUpper = hsvUpper.val.clone();
+		IgnoreZones z = ignoreZones;
+		if(z != null)
+			p.zones.addAll(z.getPolygons());
+		synchronized(model)	{
+			if(!model.empty())
+				p.setBackground(model);
+		}//sync
+		return p;
+	}//makeProfile
+	
+	/*
+	 * Shows a box in the middle of the output for the given number of
+	 * frames, the hand held in it when the countdown ends becomes the
+	 * colour model of the CamShift tracking mode.
+	 */
+	public void calibrateTracking(int frames)	{
+		calibrateFrames = Math.max(1, frames);
+	}//calibrateTracking
+	
+	//back-projection + CamShift in place of background subtraction once calibrated
+	public void setCamShiftTracking(boolean on)	{
+		camShift = on;
+	}//setCamShiftTracking
+	
+	public boolean isCamShiftTracking()	{
+		return camShift;
+	}//isCamShiftTracking
+	
+	public CamShiftTracker getTracker()	{
+		return tracker;
+	}//getTracker
+	
+	//null goes back to the fixed single frame model
+	public void setBackgroundModel(BackgroundModel m)	{
+		bgModel = m == null ? bgSub : m;
+	}//setBackgroundModel
+	
+	public BackgroundModel getBackgroundModel()	{
+		return bgModel;
+	}//getBackgroundModel
+	
 	public BufferedImage getImage()	{
 		return image;
 	}//getImage()
 	
+	//the output image with the capture time of the frame behind it
+	public StampedImage getStampedImage()	{
+		return stamped;
+	}//getStampedImage
+	
+	public LatencyTracker getLatency()	{
+		return latency;
+	}//getLatency
+	
 	public boolean isfetching()	{
 		return true;
 	}//isFetching
 	
 	public Mat CVHandRec(Mat src, ArrayList<MatOfPoint> contours, ArrayList<MatOfPoint> convexHullMatOfPointArrayList)	{
 		//pre-processing img_op for cntr_def
-	    Imgproc.cvtColor(src, src, Imgproc.COLOR_BGR2HSV);
-	    Mat dest = new Mat();
-	    Core.inRange(src, new Scalar(58,125,0), new Scalar(256,256,256), dest);
-	    Mat erode = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(3,3));
-        Mat dilate = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(5,5));
-        Imgproc.dilate(src, src, dilate);
-        Imgproc.erode(src, src, erode);
+	    //src is already the segmentation mask (background and/or colour table),
+	    //its channels agree so one of them is the single channel hand mask
+	    if(src.channels() == 3)
+	    Imgproc.cvtColor(src, src, Imgproc.COLOR_BGR2GRAY);
+	    morphology.apply(src);
         
 	    //contour definition
-	    Imgproc.cvtColor(src, src, Imgproc.COLOR_BGR2GRAY);
+	    if(labelBlobs)
+	    	labelHand(src, contours);
+	    else	{
 	    Imgproc.Canny(src, src, 1, 100);
 	    
-	    Mat hierarchy = new Mat();
 	    Imgproc.findContours(src, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+	    }//else
 	    
 	   
 		
 		return src;
 	}//CVHandRed
 	
+	/*
+	 * Labels the mask once, keeps the largest blob above the minimum area
+	 * (scaled to the detection level) and traces only that one, so contours
+	 * holds at most the hand. The mask stays filled for display.
+	 */
+	private void labelHand(Mat src, ArrayList<MatOfPoint> contours)	{
+		int rows = src.rows(), cols = src.cols();
+		if(maskBytes.length != rows * cols)
+			maskBytes = new byte[rows * cols];
+		src.get(0, 0, maskBytes);
+		
+		int minArea = Math.max(1, minBlobArea >> (2 * recLevel));
+		Blob hand = null;
+		for(Blob b : labeler.label(maskBytes, rows, cols, minArea))
+			if(hand == null || b.area > hand.area)
+				hand = b;
+		handBlob = hand;
+		if(hand == null)
+			return;
+		
+		//the blob alone with a one pixel border, traced at its own offset
+		blobBytes = labeler.extract(hand, blobBytes);
+		int w = hand.maxX - hand.minX + 3;
+		int h = hand.maxY - hand.minY + 3;
+		blobMask.create(h, w, CvType.CV_8UC1);
+		blobMask.put(0, 0, blobBytes);
+		Imgproc.findContours(blobMask, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE,
+				new Point(hand.minX - 1, hand.minY - 1));
+	}//labelHand
+	
+	/*
+	 * Connected component labelling (default) or the old Canny + every
+	 * contour path. Blobs under minArea pixels at full resolution are noise.
+	 */
+	public void setBlobLabelling(boolean on, int minArea)	{
+		minBlobArea = minArea;
+		labelBlobs = on;
+	}//setBlobLabelling
+	
+	public boolean isBlobLabelling()	{
+		return labelBlobs;
+	}//isBlobLabelling
+	
+	//rejection counts of the largest contour selection
+	public ContourSelector getContourSelector()	{
+		return selector;
+	}//getContourSelector
+	
+	//the hand blob of the last frame in detection coordinates, null if none
+	public Blob getHandBlob()	{
+		return handBlob;
+	}//getHandBlob
+	
 	
 	public void setGroundSize(int width, int height)	{
 		groundWidth = width;
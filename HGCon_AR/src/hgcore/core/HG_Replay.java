@@ -0,0 +1,71 @@
+package hgcore.core;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.opencv.core.Core;
+
+/*
+ * Headless driver for HG_Core. Feeds a recorded video file or a directory of
+ * frames through the full pipeline and prints the throughput.
+ *
+ * usage: HG_Replay <video file | session.hgs | frame dir> [--max-speed] [--fps n] [--workers n] [--level n] [--roi] [--pyramid] [--bootstrap n]
+ */
+public class HG_Replay {
+	
+	public static void main(String[] args) throws InterruptedException, IOException	{
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+		
+		if(args.length < 1)	{
+			System.out.println("usage: HG_Replay <video file | session.hgs | frame dir> [--max-speed] [--fps n] [--workers n] [--level n] [--roi] [--pyramid] [--bootstrap n]");
+			return;
+		}//if
+		
+		boolean maxSpeed = false;
+		double fps = 30;
+		int workers = 0;
+		int level = 0;
+		boolean roi = false;
+		boolean pyramid = false;
+		int bootstrap = 60;
+		for(int i = 1; i < args.length; i++)	{
+			if(args[i].equals("--max-speed"))
+				maxSpeed = true;
+			else if(args[i].equals("--fps"))
+				fps = Double.parseDouble(args[++i]);
+			else if(args[i].equals("--workers"))
+				workers = Integer.parseInt(args[++i]);
+			else if(args[i].equals("--level"))
+				level = Integer.parseInt(args[++i]);
+			else if(args[i].equals("--roi"))
+				roi = true;
+			else if(args[i].equals("--pyramid"))
+				pyramid = true;
+			else if(args[i].equals("--bootstrap"))
+				bootstrap = Integer.parseInt(args[++i]);
+		}//for
+		
+		File in = new File(args[0]);
+		FrameSource source;
+		if(in.isDirectory())
+			source = new ImageSequenceFrameSource(in, workers, fps, maxSpeed);
+		else if(in.getName().endsWith(".hgs"))
+			source = new SessionReplaySource(in, maxSpeed);
+		else
+			source = new VideoFileFrameSource(in.getPath(), maxSpeed);
+		
+		HG_Core core = new HG_Core(source);
+		core.setDetectionLevel(level);
+		core.setRoiTracking(roi, 0.5);
+		core.setPyramidSearch(pyramid);
+		core.setBootstrap(bootstrap, 0.95);
+		core.filterCV = true;
+		core.viewContour = true;
+		core.viewConvexHull = true;
+		core.viewConvexityDefects = true;
+		core.viewBoundingRect = true;
+		core.start();
+		core.join();
+	}//main
+	
+}//class
@@ -0,0 +1,125 @@
+package hgcore.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+
+/*
+ * Fixed clutter the operator marked as never-a-hand (posters, desks, door
+ * frames), as polygons in frame pixels. They are rasterised once per frame
+ * size into a cached keep mask that is ANDed into the segmentation. On top
+ * of that the bounding box of what is left is the region detection runs
+ * in, so rows and columns that are fully ignored are never labelled or
+ * traced at all.
+ */
+public class IgnoreZones {
+	
+	private final List<int[]> polygons;
+	
+	private Mat keep1 = new Mat();
+	private Mat keep3 = new Mat();
+	private Rect active;
+	private int cols = -1, rows = -1;
+	private long ignored;
+	
+	private volatile long frames, maskedPixels, skippedPixels;
+	
+	//each polygon is x0, y0, x1, y1, ... in frame pixels
+	public IgnoreZones(List<int[]> polygons)	{
+		this.polygons = new ArrayList<int[]>(polygons);
+	}//construct
+	
+	//rasterise for this frame size, only when it changes
+	private void prepare(int c, int r)	{
+		if(c == cols && r == rows)
+			return;
+		cols = c;
+		rows = r;
+		
+		ArrayList<MatOfPoint> pts = new ArrayList<MatOfPoint>();
+		for(int[] poly : polygons)	{
+			Point[] p = new Point[poly.length / 2];
+			for(int i = 0; i < p.length; i++)
+				p[i] = new Point(poly[2 * i], poly[2 * i + 1]);
+			pts.add(new MatOfPoint(p));
+		}//for
+		keep1.create(r, c, CvType.CV_8UC1);
+		keep1.setTo(new Scalar(255));
+		if(!pts.isEmpty())
+			Core.fillPoly(keep1, pts, new Scalar(0));
+		keep3.create(r, c, CvType.CV_8UC3);
+		keep3.setTo(new Scalar(255, 255, 255));
+		if(!pts.isEmpty())
+			Core.fillPoly(keep3, pts, new Scalar(0, 0, 0));
+		ignored = (long)r * c - Core.countNonZero(keep1);
+		
+		//bounding box of the pixels that are kept
+		byte[] px = new byte[r * c];
+		keep1.get(0, 0, px);
+		int x0 = c, y0 = r, x1 = -1, y1 = -1;
+		for(int y = 0; y < r; y++)
+			for(int x = 0, p = y * c; x < c; x++, p++)
+				if(px[p] != 0)	{
+					if(x < x0) x0 = x;
+					if(x > x1) x1 = x;
+					if(y < y0) y0 = y;
+					y1 = y;
+				}//if
+		active = x1 < 0 ? new Rect(0, 0, 0, 0) : new Rect(x0, y0, x1 - x0 + 1, y1 - y0 + 1);
+	}//prepare
+	
+	//clears the ignored pixels of a 1 or 3 channel mask
+	public void apply(Mat mask)	{
+		prepare(mask.cols(), mask.rows());
+		Core.bitwise_and(mask, mask.channels() == 3 ? keep3 : keep1, mask);
+		frames++;
+		maskedPixels += ignored;
+	}//apply
+	
+	/*
+	 * The detection region: roi (or the whole frame when null) cut down to
+	 * the box of kept pixels. Null again when that is the whole frame.
+	 */
+	public Rect clip(Rect roi, int c, int r)	{
+		prepare(c, r);
+		Rect a = active;
+		int x0 = Math.max(a.x, roi == null ? 0 : roi.x);
+		int y0 = Math.max(a.y, roi == null ? 0 : roi.y);
+		int x1 = Math.min(a.x + a.width, roi == null ? c : roi.x + roi.width);
+		int y1 = Math.min(a.y + a.height, roi == null ? r : roi.y + roi.height);
+		//pyrDown needs something to work with, like searchRoi
+		if(x1 - x0 < 16 || y1 - y0 < 16)
+			return roi;
+		if(x0 == 0 && y0 == 0 && x1 == c && y1 == r)
+			return null;
+		Rect out = new Rect(x0, y0, x1 - x0, y1 - y0);
+		skippedPixels += (long)(roi == null ? c * r : roi.width * roi.height) - out.width * out.height;
+		return out;
+	}//clip
+	
+	public List<int[]> getPolygons()	{
+		return polygons;
+	}//getPolygons
+	
+	public long getFrames()	{
+		return frames;
+	}//getFrames
+	
+	//pixels cleared from the masks so far
+	public long getMaskedPixels()	{
+		return maskedPixels;
+	}//getMaskedPixels
+	
+	//pixels detection never had to look at so far
+	public long getSkippedPixels()	{
+		return skippedPixels;
+	}//getSkippedPixels
+	
+}//class
@@ -0,0 +1,60 @@
+package hgcore.core;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+/*
+ * Spots global lighting changes (a light switched on, the camera's auto
+ * exposure kicking in) so the background model can relearn instead of
+ * flagging the whole frame as foreground. Triggers when the mean brightness
+ * jumps away from its slow running mean, or when most of the frame comes
+ * out as foreground.
+ */
+public class IlluminationChangeDetector {
+	
+	private double maxBrightnessJump = 25;
+	private double maxForeground = 0.6;
+	private double trackRate = 0.05;
+	private int cooldown = 30;	// frames to wait after a relearn
+	
+	private double reference = -1;
+	private int quiet = 0;
+	private long triggered = 0;
+	
+	/*
+	 * frame is the camera image, mask the 0/255 model output for it. Returns
+	 * true when the model should relearn.
+	 */
+	public boolean check(Mat frame, Mat mask)	{
+		double[] m = Core.mean(frame).val;
+		double brightness = (m[0] + m[1] + m[2]) / 3;
+		
+		if(reference < 0 || quiet > 0)	{
+			if(quiet > 0)
+				quiet--;
+			reference = brightness;
+			return false;
+		}//if
+		
+		double fg = Core.mean(mask).val[0] / 255;
+		boolean changed = Math.abs(brightness - reference) > maxBrightnessJump || fg > maxForeground;
+		reference += (brightness - reference) * trackRate;
+		
+		if(changed)	{
+			triggered++;
+			quiet = cooldown;
+			reference = brightness;
+		}//if
+		return changed;
+	}//check
+	
+	public void setLimits(double maxBrightnessJump, double maxForeground)	{
+		this.maxBrightnessJump = maxBrightnessJump;
+		this.maxForeground = maxForeground;
+	}//setLimits
+	
+	public long getTriggerCount()	{
+		return triggered;
+	}//getTriggerCount
+	
+}//class
@@ -0,0 +1,140 @@
+package hgcore.core;
+
+import org.opencv.core.Mat;
+
+/*
+ * Takes camera auto gain and white balance swings out of the frame before
+ * segmentation: gray-world white balance (every channel scaled to the same
+ * mean) followed by histogram equalisation of V, the HSV value. Scaling all
+ * three channels by the same factor changes V but keeps hue and saturation,
+ * so V is equalised without converting to HSV.
+ *
+ * Both steps are 256 entry tables rebuilt from every 4th pixel of every
+ * 4th row once per interval frames, the other frames only pay one lookup
+ * pass in RowBands. A background model learnt through the tables only
+ * stays valid while they don't change, so HG_Core freezes them for as long
+ * as it uses one.
+ */
+public class IlluminationNormalizer {
+	
+	private static final int STEP = 4;
+	
+	private int interval;
+	private double strength = 1;
+	private boolean whiteBalance = true;
+	private boolean equalize = true;
+	private boolean frozen = false;
+	private boolean built = false;
+	
+	//white balanced value per channel, then a 16.16 factor per balanced V
+	private final int[][] balance = new int[3][256];
+	private final int[] scale = new int[256];
+	private int frames;
+	private byte[] px = new byte[0];
+	
+	public IlluminationNormalizer(int interval)	{
+		this.interval = Math.max(1, interval);
+	}//construct
+	
+	//in place, frame is BGR
+	public void apply(Mat frame)	{
+		int len = (int)(frame.total() * frame.channels());
+		if(px.length != len)
+			px = new byte[len];
+		frame.get(0, 0, px);
+		normalize(px, frame.rows(), frame.cols());
+		frame.put(0, 0, px);
+	}//apply
+	
+	public void normalize(final byte[] f, int rows, final int cols)	{
+		boolean due = frames++ % interval == 0;
+		if(due && !frozen || !built)
+			update(f, rows, cols);
+		
+		final int[] b0 = balance[0], b1 = balance[1], b2 = balance[2];
+		final int[] s = scale;
+		final int stride = cols * 3;
+		RowBands.run(rows, cols, new RowBands.Band()	{
+			public void rows(int from, int to)	{
+				for(int i = from * stride, end = to * stride; i < end; i += 3)	{
+					int b = b0[f[i] & 0xff];
+					int g = b1[f[i + 1] & 0xff];
+					int r = b2[f[i + 2] & 0xff];
+					int k = s[Math.max(b, Math.max(g, r))];
+					f[i] = (byte)Math.min(255, (b * k) >> 16);
+					f[i + 1] = (byte)Math.min(255, (g * k) >> 16);
+					f[i + 2] = (byte)Math.min(255, (r * k) >> 16);
+				}//for
+			}
+		});
+	}//normalize
+	
+	//rebuild both tables from a subsample of the frame
+	private void update(byte[] f, int rows, int cols)	{
+		long[] sum = new long[3];
+		int n = 0;
+		for(int y = 0; y < rows; y += STEP)
+			for(int i = y * cols * 3, end = i + cols * 3; i < end; i += 3 * STEP)	{
+				sum[0] += f[i] & 0xff;
+				sum[1] += f[i + 1] & 0xff;
+				sum[2] += f[i + 2] & 0xff;
+				n++;
+			}//for
+		if(n == 0)
+			return;
+		
+		double gray = (sum[0] + sum[1] + sum[2]) / 3.0;
+		for(int c = 0; c < 3; c++)	{
+			//a channel that is nearly black stays as it is
+			double gain = !whiteBalance || sum[c] == 0 ? 1 : Math.max(0.5, Math.min(2, gray / sum[c]));
+			for(int v = 0; v < 256; v++)
+				balance[c][v] = Math.min(255, (int)Math.round(v * gain));
+		}//for
+		
+		int[] hist = new int[256];
+		for(int y = 0; y < rows; y += STEP)
+			for(int i = y * cols * 3, end = i + cols * 3; i < end; i += 3 * STEP)	{
+				int v = Math.max(balance[0][f[i] & 0xff], Math.max(balance[1][f[i + 1] & 0xff], balance[2][f[i + 2] & 0xff]));
+				hist[v]++;
+			}//for
+		
+		int cdf = 0, first = 0;
+		for(int v = 0; v < 256 && first == 0; v++)
+			first = hist[v];
+		for(int v = 0; v < 256; v++)	{
+			cdf += hist[v];
+			double target = v;
+			if(equalize && n > first)	{
+				double eq = 255.0 * Math.max(0, cdf - first) / (n - first);
+				target = strength * eq + (1 - strength) * v;
+			}//if
+			scale[v] = v == 0 ? 1 << 16 : (int)Math.round(target * 65536 / v);
+		}//for
+		built = true;
+	}//update
+	
+	//the tables are always built once, unfreezing rebuilds them on the next frame
+	public void setFrozen(boolean frozen)	{
+		if(this.frozen && !frozen)
+			frames = 0;
+		this.frozen = frozen;
+	}//setFrozen
+	
+	//how far V is pulled toward the equalised histogram, 1 is all the way
+	public void setStrength(double strength)	{
+		this.strength = Math.max(0, Math.min(1, strength));
+	}//setStrength
+	
+	public void setWhiteBalance(boolean on)	{
+		whiteBalance = on;
+	}//setWhiteBalance
+	
+	public void setEqualize(boolean on)	{
+		equalize = on;
+	}//setEqualize
+	
+	public int getInterval()	{
+		return interval;
+	}//getInterval
+	
+}//class
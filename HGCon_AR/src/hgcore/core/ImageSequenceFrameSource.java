@@ -0,0 +1,118 @@
+package hgcore.core;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.opencv.core.Mat;
+import org.opencv.highgui.Highgui;
+
+/*
+ * Replays a directory of PNG/JPG frames in file name order. Decoding runs
+ * ahead of the consumer on a small worker pool so imread never sits on the
+ * Core thread's critical path.
+ */
+public class ImageSequenceFrameSource implements FrameSource {
+	
+	private File[] files;
+	private int next = 0;
+	private int taken = 0;
+	private int lookAhead;
+	
+	private ExecutorService decoders;
+	private ArrayDeque<Future<Mat>> pending = new ArrayDeque<Future<Mat>>();
+	private FramePacer pacer;
+	
+	public ImageSequenceFrameSource(File dir, int workers, double fps, boolean maxSpeed)	{
+		files = dir.listFiles(new FilenameFilter()	{
+			public boolean accept(File d, String name)	{
+				String n = name.toLowerCase();
+				return n.endsWith(".png") || n.endsWith(".jpg") || n.endsWith(".jpeg");
+			}
+		});
+		if(files == null || files.length == 0)
+			throw new IllegalArgumentException("No PNG/JPG frames in " + dir);
+		Arrays.sort(files);
+		
+		if(workers < 1)
+			workers = Runtime.getRuntime().availableProcessors();
+		lookAhead = workers * 2;
+		decoders = Executors.newFixedThreadPool(workers, new ThreadFactory()	{
+			public Thread newThread(Runnable r)	{
+				Thread t = new Thread(r, "Frame Decoder");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		pacer = new FramePacer(fps, maxSpeed);
+		fill();
+	}//construct
+	
+	//keep lookAhead decodes in flight
+	private void fill()	{
+		while(pending.size() < lookAhead && next < files.length)	{
+			final String path = files[next++].getPath();
+			pending.add(decoders.submit(new Callable<Mat>()	{
+				public Mat call()	{
+					return Highgui.imread(path, Highgui.CV_LOAD_IMAGE_COLOR);
+				}
+			}));
+		}//while
+	}//fill
+	
+	public boolean read(Mat frame)	{
+		Mat decoded = null;
+		while(decoded == null)	{
+			Future<Mat> f = pending.poll();
+			if(f == null)
+				return false;
+			File file = files[taken++];
+			
+			try	{
+				decoded = f.get();
+			}catch(InterruptedException e)	{
+				Thread.currentThread().interrupt();
+				return false;
+			}catch(ExecutionException e)	{
+				e.printStackTrace();
+			}//catch
+			fill();
+			
+			//one bad file shouldn't end the whole replay
+			if(decoded == null || decoded.empty())	{
+				System.out.println("Skipping " + file + ", it can't be decoded");
+				if(decoded != null)
+					decoded.release();
+				decoded = null;
+			}//if
+		}//while
+		decoded.copyTo(frame);
+		decoded.release();
+		
+		pacer.pace();
+		return true;
+	}//read
+	
+	public int getFrameCount()	{
+		return files.length;
+	}//getFrameCount
+	
+	public boolean isLive()	{
+		return false;
+	}//isLive
+	
+	public void release()	{
+		for(Future<Mat> f : pending)
+			f.cancel(true);
+		pending.clear();
+		decoders.shutdownNow();
+	}//release
+	
+}//class
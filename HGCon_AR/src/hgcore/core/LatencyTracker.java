@@ -0,0 +1,66 @@
+package hgcore.core;
+
+import java.util.Arrays;
+
+/*
+ * Capture to paint latency of the frames that reached the screen. Keeps the
+ * last SAMPLES latencies for percentiles and counts frames HG_Core
+ * published that were replaced before the UI ever painted them.
+ */
+public class LatencyTracker {
+	
+	private static final int SAMPLES = 1024;
+	
+	private long[] samples = new long[SAMPLES];
+	private int next = 0;
+	private int filled = 0;
+	
+	private long published = 0;
+	private long painted = 0;
+	private long lastPainted = -1;
+	
+	//called by HG_Core for every image it hands to the UI
+	public synchronized void published()	{
+		published++;
+	}//published
+	
+	//called by the UI when it draws a frame, repaints of the same frame are ignored
+	public synchronized void painted(StampedImage frame)	{
+		if(frame == null || frame.seq == lastPainted)
+			return;
+		lastPainted = frame.seq;
+		painted++;
+		
+		samples[next] = System.nanoTime() - frame.captured;
+		next = (next + 1) % SAMPLES;
+		if(filled < SAMPLES)
+			filled++;
+	}//painted
+	
+	//p in [0,100], in milliseconds over the recent window
+	public synchronized double getPercentile(double p)	{
+		if(filled == 0)
+			return 0;
+		long[] sorted = Arrays.copyOf(samples, filled);
+		Arrays.sort(sorted);
+		int idx = (int)Math.ceil(p / 100.0 * filled) - 1;
+		idx = Math.max(0, Math.min(filled - 1, idx));
+		return sorted[idx] / 1e6;
+	}//getPercentile
+	
+	public synchronized long getPaintedFrames()	{
+		return painted;
+	}//getPaintedFrames
+	
+	//produced by HG_Core but never painted
+	public synchronized long getUnpaintedFrames()	{
+		return published - painted;
+	}//getUnpaintedFrames
+	
+	public synchronized void reset()	{
+		next = filled = 0;
+		published = painted = 0;
+		lastPainted = -1;
+	}//reset
+	
+}//class
@@ -0,0 +1,159 @@
+package hgcore.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/*
+ * Builds the initial background from the per-pixel median of the first
+ * frames instead of a single grab, so an exposure transient or someone
+ * walking past doesn't poison the session's mask.
+ *
+ * The median is a streaming estimate: every sample nudges the estimate
+ * toward itself by a step that shrinks as 1/sqrt(t), only the sign of the
+ * difference counts so outliers move it no more than anything else.
+ *
+ * Agreeing with the estimate says little on its own, the estimate chases
+ * the same samples. So a sample only counts as settled once it has stayed
+ * within AGREE of an estimate that itself moved less than AGREE over the
+ * last WINDOW frames. A slow exposure ramp moves the estimate and never
+ * settles. Where something passes through, the samples stop agreeing, and
+ * the value the estimate had while it was last settled is kept. That value
+ * is baked instead of the one the estimate was pulled toward. The frame
+ * mean of the estimate has to hold still over the window too, which
+ * catches ramps too slow to show per pixel.
+ *
+ * Memory stays O(pixels) however many frames are used. Done once the
+ * given fraction of the samples is settled, next to none has never
+ * settled (something covering it from the start) and the mean is steady,
+ * or after maxFrames regardless.
+ */
+public class MedianBootstrap {
+	
+	private static final int FIX = 16;			// fixed point scale of the estimate
+	private static final int FIRST_STEP = 32 * FIX;
+	private static final int MIN_STEP = FIX / 4;
+	private static final int WINDOW = 8;		// frames a sample has to agree for to count as settled
+	private static final int AGREE = 10;		// levels a sample or the estimate may move and still agree
+	private static final double STEADY = 1;		// levels the frame mean may move over the window
+	private static final double UNSEEN = 0.001;	// share of samples that may never have settled, hot pixels and such
+	
+	private int maxFrames;
+	private double target;
+	
+	private short[] est = new short[0];
+	private short[] anchor = new short[0];	// estimate when the sample's current run began
+	private short[] kept = new short[0];	// estimate while last settled, -1 if never
+	private byte[] run = new byte[0];
+	private byte[] px = new byte[0];
+	private double[] means = new double[WINDOW + 1];
+	private int frames = 0;
+	private double confidence = 0;
+	private int rows, cols;
+	
+	public MedianBootstrap(int maxFrames, double target)	{
+		this.maxFrames = Math.max(1, maxFrames);
+		this.target = target;
+	}//construct
+	
+	public void reset()	{
+		frames = 0;
+		confidence = 0;
+	}//reset
+	
+	//feed the next frame, true once the background is good enough to use
+	public boolean add(Mat frame)	{
+		int len = (int)(frame.total() * frame.channels());
+		if(len != est.length || frames == 0)	{
+			est = new short[len];
+			anchor = new short[len];
+			kept = new short[len];
+			run = new byte[len];
+			px = new byte[len];
+			frames = 0;
+		}//if
+		rows = frame.rows();
+		cols = frame.cols();
+		frame.get(0, 0, px);
+		frames++;
+		
+		if(frames == 1)	{
+			long sum = 0;
+			for(int i = 0; i < len; i++)	{
+				est[i] = anchor[i] = (short)((px[i] & 0xff) * FIX);
+				kept[i] = -1;
+				run[i] = 0;
+				sum += est[i];
+			}//for
+			means[0] = sum / (double)len;
+			confidence = 0;
+			return maxFrames == 1;
+		}//if
+		
+		final int step = Math.max(MIN_STEP, (int)(FIRST_STEP / Math.sqrt(frames)));
+		final int stride = cols * 3;
+		final AtomicLong settled = new AtomicLong();
+		final AtomicLong total = new AtomicLong();
+		final AtomicLong unseen = new AtomicLong();
+		RowBands.run(rows, cols, new RowBands.Band()	{
+			public void rows(int from, int to)	{
+				long n = 0, sum = 0, never = 0;
+				for(int i = from * stride, end = to * stride; i < end; i++)	{
+					int x = (px[i] & 0xff) * FIX;
+					int m = est[i];
+					int d = x - m;
+					int drift = m - anchor[i];
+					if(d <= AGREE * FIX && d >= -AGREE * FIX && drift <= AGREE * FIX && drift >= -AGREE * FIX)	{
+						if(run[i] < WINDOW)
+							run[i]++;
+					}//if
+					else	{
+						run[i] = 0;
+						anchor[i] = (short)m;
+					}//else
+					if(run[i] >= WINDOW)	{
+						kept[i] = (short)m;
+						n++;
+					}//if
+					else if(kept[i] < 0)
+						never++;
+					
+					if(d > 0)
+						m += Math.min(step, d);
+					else if(d < 0)
+						m -= Math.min(step, -d);
+					est[i] = (short)m;
+					sum += m;
+				}//for
+				settled.addAndGet(n);
+				total.addAndGet(sum);
+				unseen.addAndGet(never);
+			}
+		});
+		
+		confidence = settled.get() / (double)len;
+		means[frames % means.length] = total.get() / (double)len;
+		boolean steady = frames > WINDOW
+				&& Math.abs(means[frames % means.length] - means[(frames - WINDOW) % means.length]) <= STEADY * FIX;
+		return frames >= maxFrames || (steady && confidence >= target && unseen.get() <= UNSEEN * len);
+	}//add
+	
+	//fraction of the samples settled on the last frame
+	public double getConfidence()	{
+		return confidence;
+	}//getConfidence
+	
+	public int getFrames()	{
+		return frames;
+	}//getFrames
+	
+	//settled values where there are any, so a passer-by still in view leaves no ghost
+	public void getBackground(Mat out)	{
+		for(int i = 0; i < est.length; i++)
+			px[i] = (byte)(((kept[i] >= 0 ? kept[i] : est[i]) + FIX / 2) / FIX);
+		out.create(rows, cols, CvType.CV_8UC3);
+		out.put(0, 0, px);
+	}//getBackground
+	
+}//class
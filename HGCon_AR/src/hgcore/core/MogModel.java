@@ -0,0 +1,49 @@
+package hgcore.core;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.video.BackgroundSubtractorMOG;
+
+/*
+ * Per-pixel Gaussian mixture background (OpenCV's BackgroundSubtractorMOG).
+ * The mixture carries its own notion of distance so the slider threshold
+ * does not apply here.
+ */
+public class MogModel implements BackgroundModel {
+	
+	private static final int HISTORY = 200;
+	private static final int MIXTURES = 5;
+	private static final double BACKGROUND_RATIO = 0.7;
+	
+	private BackgroundSubtractorMOG mog;
+	private double learningRate;
+	private boolean reset = true;
+	private Mat fg = new Mat();
+	
+	//learningRate < 0 lets OpenCV derive it from the history length
+	public MogModel(double learningRate)	{
+		this.learningRate = learningRate;
+		mog = new BackgroundSubtractorMOG(HISTORY, MIXTURES, BACKGROUND_RATIO, 0);
+	}//construct
+	
+	//seed the mixtures from the given background rather than the next live frame
+	public void learn(Mat frame)	{
+		mog.apply(frame, fg, 1);
+		reset = false;
+	}//learn
+	
+	public void apply(Mat frame, Mat out)	{
+		//a rate of 1 reinitialises every mixture from this frame
+		mog.apply(frame, fg, reset ? 1 : learningRate);
+		reset = false;
+		Imgproc.cvtColor(fg, out, Imgproc.COLOR_GRAY2BGR);
+	}//apply
+	
+	public void relearn(Mat frame)	{
+		reset = true;
+	}//relearn
+	
+	public void setThreshold(double value)	{
+	}//setThreshold
+	
+}//class
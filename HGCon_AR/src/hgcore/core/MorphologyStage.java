@@ -0,0 +1,131 @@
+package hgcore.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/*
+ * Configurable morphology over the single channel hand mask. The steps run
+ * in order, in place. Structuring elements are built once and cached, and
+ * a rectangular element can be split into a row and a column pass (a w x h
+ * rect erode/dilate equals a w x 1 followed by a 1 x h one), which is
+ * O(w + h) per pixel instead of O(w * h).
+ */
+public class MorphologyStage {
+	
+	public static final int ERODE = 0;
+	public static final int DILATE = 1;
+	public static final int OPEN = 2;	// erode then dilate: removes specks
+	public static final int CLOSE = 3;	// dilate then erode: fills holes
+	
+	private static class Step	{
+		int op, shape, width, height;
+		Step(int op, int shape, int width, int height)	{
+			this.op = op;
+			this.shape = shape;
+			this.width = width;
+			this.height = height;
+		}//construct
+	}//Step
+	
+	private volatile ArrayList<Step> steps = new ArrayList<Step>();
+	private boolean separable = true;
+	private HashMap<String, Mat> kernels = new HashMap<String, Mat>();
+	private Mat tmp = new Mat();
+	private Mat cur, other;
+	
+	//what CVHandRec always did: dilate 5x5, erode 3x3
+	public MorphologyStage()	{
+		add(DILATE, Imgproc.MORPH_RECT, 5, 5);
+		add(ERODE, Imgproc.MORPH_RECT, 3, 3);
+	}//construct
+	
+	public synchronized void clear()	{
+		steps = new ArrayList<Step>();
+	}//clear
+	
+	//shape is Imgproc.MORPH_RECT, MORPH_ELLIPSE or MORPH_CROSS
+	public synchronized MorphologyStage add(int op, int shape, int width, int height)	{
+		ArrayList<Step> next = new ArrayList<Step>(steps);
+		next.add(new Step(op, shape, width, height));
+		steps = next;
+		return this;
+	}//add
+	
+	public static MorphologyStage open(int size)	{
+		MorphologyStage m = new MorphologyStage();
+		m.clear();
+		return m.add(OPEN, Imgproc.MORPH_RECT, size, size);
+	}//open
+	
+	public static MorphologyStage close(int size)	{
+		MorphologyStage m = new MorphologyStage();
+		m.clear();
+		return m.add(CLOSE, Imgproc.MORPH_RECT, size, size);
+	}//close
+	
+	public void setSeparable(boolean on)	{
+		separable = on;
+	}//setSeparable
+	
+	//mask is updated in place, passes ping-pong between it and one spare buffer
+	public void apply(Mat mask)	{
+		cur = mask;
+		other = tmp;
+		ArrayList<Step> s = steps;
+		for(int i = 0; i < s.size(); i++)	{
+			Step st = s.get(i);
+			switch(st.op)	{
+				case ERODE:
+					run(false, st);
+					break;
+				case DILATE:
+					run(true, st);
+					break;
+				case OPEN:
+					run(false, st);
+					run(true, st);
+					break;
+				case CLOSE:
+					run(true, st);
+					run(false, st);
+					break;
+			}//switch
+		}//for
+		if(cur != mask)
+			cur.copyTo(mask);
+	}//apply
+	
+	private void run(boolean dilate, Step st)	{
+		if(separable && st.shape == Imgproc.MORPH_RECT && st.width > 1 && st.height > 1)	{
+			morph(dilate, kernel(Imgproc.MORPH_RECT, st.width, 1));
+			morph(dilate, kernel(Imgproc.MORPH_RECT, 1, st.height));
+		}//if
+		else
+			morph(dilate, kernel(st.shape, st.width, st.height));
+	}//run
+	
+	private void morph(boolean dilate, Mat k)	{
+		if(dilate)
+			Imgproc.dilate(cur, other, k);
+		else
+			Imgproc.erode(cur, other, k);
+		Mat t = cur;
+		cur = other;
+		other = t;
+	}//morph
+	
+	private Mat kernel(int shape, int width, int height)	{
+		String key = shape + ":" + width + "x" + height;
+		Mat k = kernels.get(key);
+		if(k == null)	{
+			k = Imgproc.getStructuringElement(shape, new Size(width, height));
+			kernels.put(key, k);
+		}//if
+		return k;
+	}//kernel
+	
+}//class
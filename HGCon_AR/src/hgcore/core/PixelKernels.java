@@ -0,0 +1,140 @@
+package hgcore.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/*
+ * The two pure-Java pixel passes over flat BGR byte arrays, in a scalar
+ * and a SWAR version (SIMD within a register: eight bytes per 64 bit word).
+ * The SWAR path works on 24 byte blocks, eight whole pixels, and falls back
+ * to scalar for the tail. Switch with -Dhgcore.simd=false or setSwar().
+ *
+ * Words are read through a little endian ByteBuffer view of the array,
+ * which JDK 9+ compiles down to plain unaligned loads.
+ */
+public final class PixelKernels {
+	
+	private static final long H = 0x8080808080808080L;	// high bit of every byte
+	private static final long L7 = 0x7F7F7F7F7F7F7F7FL;
+	private static final long ONES = 0x0101010101010101L;
+	
+	//first byte of each pixel in the three words of a 24 byte block
+	private static final long P0 = 0x00FF0000FF0000FFL;
+	private static final long P1 = 0xFF0000FF0000FF00L;
+	private static final long P2 = 0x0000FF0000FF0000L;
+	
+	private static volatile boolean swar = !"false".equalsIgnoreCase(System.getProperty("hgcore.simd"));
+	
+	private PixelKernels()	{}
+	
+	public static void setSwar(boolean on)	{
+		swar = on;
+	}//setSwar
+	
+	public static boolean isSwar()	{
+		return swar;
+	}//isSwar
+	
+	static ByteBuffer wrap(byte[] a)	{
+		return ByteBuffer.wrap(a).order(ByteOrder.LITTLE_ENDIAN);
+	}//wrap
+	
+	/*
+	 * Background mask over bytes [from, to) (pixel aligned): a pixel becomes
+	 * 0 when every channel differs from the model by less than t, 255
+	 * otherwise. Written back into frame.
+	 */
+	public static void mask(byte[] frame, byte[] model, int t, int from, int to)	{
+		if(swar && t > 0 && t < 256)
+			from = maskSwar(wrap(frame), wrap(model), t, from, to);
+		maskScalar(frame, model, t, from, to);
+	}//mask
+	
+	static void maskScalar(byte[] f, byte[] m, int t, int from, int to)	{
+		for(int i = from; i < to; i += 3)	{
+			int b = (f[i] & 0xff) - (m[i] & 0xff);
+			int g = (f[i + 1] & 0xff) - (m[i + 1] & 0xff);
+			int r = (f[i + 2] & 0xff) - (m[i + 2] & 0xff);
+			byte v = (b < t && -b < t && g < t && -g < t && r < t && -r < t) ? 0 : (byte)255;
+			f[i] = v;
+			f[i + 1] = v;
+			f[i + 2] = v;
+		}//for
+	}//maskScalar
+	
+	//returns where the scalar tail has to pick up
+	private static int maskSwar(ByteBuffer f, ByteBuffer m, int t, int from, int to)	{
+		long tt = ONES * t;
+		int end = from + (to - from) / 24 * 24;
+		for(int i = from; i < end; i += 24)	{
+			//0xFF in every channel byte whose difference reaches t
+			long f0 = reached(f.getLong(i), m.getLong(i), tt);
+			long f1 = reached(f.getLong(i + 8), m.getLong(i + 8), tt);
+			long f2 = reached(f.getLong(i + 16), m.getLong(i + 16), tt);
+			
+			//OR each pixel's three channel flags into its first byte
+			long g0 = f0 | (f0 >>> 8 | f1 << 56) | (f0 >>> 16 | f1 << 48);
+			long g1 = f1 | (f1 >>> 8 | f2 << 56) | (f1 >>> 16 | f2 << 48);
+			long g2 = f2 | (f2 >>> 8) | (f2 >>> 16);
+			g0 &= P0;
+			g1 &= P1;
+			g2 &= P2;
+			
+			//and spread it back over all three
+			f.putLong(i, g0 | g0 << 8 | g0 << 16);
+			f.putLong(i + 8, g1 | (g1 << 8 | g0 >>> 56) | (g1 << 16 | g0 >>> 48));
+			f.putLong(i + 16, g2 | (g2 << 8 | g1 >>> 56) | (g2 << 16 | g1 >>> 48));
+		}//for
+		return end;
+	}//maskSwar
+	
+	//0xFF per byte where |a - b| >= t, 0 elsewhere
+	private static long reached(long a, long b, long tt)	{
+		long ge = geMask(a, b);
+		long max = (a & ge) | (b & ~ge);
+		long min = (b & ge) | (a & ~ge);
+		//max >= min in every byte so the subtraction never borrows across bytes
+		return geMask(max - min, tt);
+	}//reached
+	
+	//0xFF per byte where the unsigned byte of x >= that of y
+	private static long geMask(long x, long y)	{
+		long low = (x | H) - (y & ~H);			// high bit: low 7 bits of x >= y
+		long hi = ((x & ~y) | (~(x ^ y) & low)) & H;
+		return (hi >>> 7) * 0xFF;
+	}//geMask
+	
+	/*
+	 * True colour reveal over bytes [from, to): wherever ground is 0 the
+	 * camera byte shows through. Ground is a gray image expanded to BGR so
+	 * its three channels always agree and bytes can be treated alone.
+	 */
+	public static void reveal(byte[] ground, byte[] camera, int from, int to)	{
+		if(swar)
+			from = revealSwar(wrap(ground), wrap(camera), from, to);
+		revealScalar(ground, camera, from, to);
+	}//reveal
+	
+	static void revealScalar(byte[] g, byte[] c, int from, int to)	{
+		for(int i = from; i < to; i += 3)	{
+			if(g[i] == 0)	{
+				g[i] = c[i];
+				g[i + 1] = c[i + 1];
+				g[i + 2] = c[i + 2];
+			}//if
+		}//for
+	}//revealScalar
+	
+	private static int revealSwar(ByteBuffer g, ByteBuffer c, int from, int to)	{
+		int end = from + (to - from) / 24 * 24;
+		for(int i = from; i < end; i += 8)	{
+			long x = g.getLong(i);
+			//high bit set in every zero byte
+			long zero = ~(((x & L7) + L7) | x) & H;
+			long z = (zero >>> 7) * 0xFF;
+			g.putLong(i, (x & ~z) | (c.getLong(i) & z));
+		}//for
+		return end;
+	}//revealSwar
+	
+}//class
@@ -0,0 +1,67 @@
+package hgcore.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/*
+ * Watches a calibration profile on disk and hands every new version of it
+ * to the listener, so edits take effect without restarting HG_Core.
+ */
+public class ProfileWatcher extends Thread {
+	
+	public interface Listener	{
+		public void profileChanged(CalibrationProfile p);
+	}//Listener
+	
+	private File file;
+	private Listener listener;
+	private WatchService watcher;
+	
+	public ProfileWatcher(File file, Listener listener) throws IOException	{
+		super("Profile Watcher");
+		setDaemon(true);
+		this.file = file.getAbsoluteFile();
+		this.listener = listener;
+		watcher = FileSystems.getDefault().newWatchService();
+		this.file.getParentFile().toPath().register(watcher,
+				StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+	}//construct
+	
+	public void run()	{
+		Path name = file.toPath().getFileName();
+		try	{
+			while(!isInterrupted())	{
+				WatchKey key = watcher.take();
+				boolean changed = false;
+				for(WatchEvent<?> e : key.pollEvents())
+					if(name.equals(e.context()))
+						changed = true;
+				key.reset();
+				
+				if(changed)	{
+					try	{
+						listener.profileChanged(CalibrationProfile.load(file));
+					}catch(IOException e)	{
+						System.out.println("Can't reload profile: " + e.getMessage());
+					}//catch
+				}//if
+			}//while
+		}catch(InterruptedException e)	{
+		}finally	{
+			try	{
+				watcher.close();
+			}catch(IOException e){}
+		}//finally
+	}//run
+	
+	public void shutdown()	{
+		interrupt();
+	}//shutdown
+	
+}//class
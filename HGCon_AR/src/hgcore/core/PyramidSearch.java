@@ -0,0 +1,133 @@
+package hgcore.core;
+
+import java.util.ArrayList;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+/*
+ * Coarse-to-fine hand search. The mask is reduced to a coarse pyramid
+ * level (about 160 pixels wide) and labelled there; only the largest
+ * blob's box is then refined one level up at a time, labelling just that
+ * region, down to the level where the hand is still about fingerSize
+ * pixels across. That is enough for finger tips, so a big hand on a
+ * 1080p frame is traced a few levels down instead of at full resolution.
+ *
+ * search() returns the region (full resolution) and getLevel() the level
+ * HG_Core runs contours, hull and defects at.
+ */
+public class PyramidSearch {
+	
+	private int coarseWidth = 160;
+	private int fingerSize = 96;
+	private int minArea = 600;
+	
+	private BlobLabeler labeler = new BlobLabeler();
+	private Mat gray = new Mat();
+	private Mat level = new Mat();
+	private byte[] px = new byte[0];
+	
+	private int coarseLevel;
+	private int targetLevel;
+	
+	//mask is the full resolution 1 or 3 channel 0/255 mask, null when there is no hand
+	public Rect search(Mat mask)	{
+		int cols = mask.cols(), rows = mask.rows();
+		Mat src = mask;
+		if(mask.channels() == 3)	{
+			Imgproc.cvtColor(mask, gray, Imgproc.COLOR_BGR2GRAY);
+			src = gray;
+		}//if
+		
+		int top = 0;
+		while((cols >> (top + 1)) >= coarseWidth)
+			top++;
+		coarseLevel = top;
+		targetLevel = top;
+		
+		Blob blob = largest(src, top);
+		if(blob == null)
+			return null;
+		Rect box = new Rect(blob.minX << top, blob.minY << top,
+				(blob.maxX - blob.minX + 1) << top, (blob.maxY - blob.minY + 1) << top);
+		
+		//deepest level where the hand still has fingerSize pixels
+		int size = Math.max(box.width, box.height);
+		int target = 0;
+		while(target < top && (size >> (target + 1)) >= fingerSize)
+			target++;
+		targetLevel = target;
+		
+		//refine level by level, each time only inside the last box
+		for(int l = top - 1; l > target; l--)	{
+			Rect region = grow(box, l + 1, cols, rows);
+			Mat sub = src.submat(region);
+			Blob b = largest(sub, l);
+			sub.release();
+			if(b == null)
+				break;	// lost at this level, keep the coarser box
+			box = new Rect(region.x + (b.minX << l), region.y + (b.minY << l),
+					(b.maxX - b.minX + 1) << l, (b.maxY - b.minY + 1) << l);
+		}//for
+		return grow(box, target + 1, cols, rows);
+	}//search
+	
+	//largest blob of src reduced to level l, in that level's pixels
+	private Blob largest(Mat src, int l)	{
+		Mat m = src;
+		for(int i = 0; i < l; i++)	{
+			Imgproc.pyrDown(m, level);
+			m = level;
+		}//for
+		if(l > 0)	//pyrDown blurs the edges
+			Imgproc.threshold(level, level, 127, 255, Imgproc.THRESH_BINARY);
+		int r = m.rows(), c = m.cols();
+		if(px.length < r * c)
+			px = new byte[r * c];
+		m.get(0, 0, px);
+		
+		Blob best = null;
+		ArrayList<Blob> blobs = labeler.label(px, r, c, Math.max(1, minArea >> (2 * l)));
+		for(Blob b : blobs)
+			if(best == null || b.area > best.area)
+				best = b;
+		return best;
+	}//largest
+	
+	/*
+	 * Box plus a margin for the one pixel uncertainty at level l and 10% for
+	 * the fingers, aligned to that level's grid and clipped to the frame.
+	 */
+	private static Rect grow(Rect box, int l, int cols, int rows)	{
+		int m = (2 << l) + Math.max(box.width, box.height) / 10;
+		int a = (1 << l) - 1;
+		int x0 = Math.max(0, box.x - m) & ~a;
+		int y0 = Math.max(0, box.y - m) & ~a;
+		int x1 = Math.min(cols, (box.x + box.width + m + a) & ~a);
+		int y1 = Math.min(rows, (box.y + box.height + m + a) & ~a);
+		return new Rect(x0, y0, x1 - x0, y1 - y0);
+	}//grow
+	
+	//level the returned region should be traced at
+	public int getLevel()	{
+		return targetLevel;
+	}//getLevel
+	
+	//level the whole frame was labelled at
+	public int getCoarseLevel()	{
+		return coarseLevel;
+	}//getCoarseLevel
+	
+	//frame width the coarse level aims for (160) and the hand size kept for finger tips (96)
+	public void setSizes(int coarseWidth, int fingerSize)	{
+		this.coarseWidth = Math.max(16, coarseWidth);
+		this.fingerSize = Math.max(16, fingerSize);
+	}//setSizes
+	
+	//smallest hand at full resolution, in pixels
+	public void setMinArea(int minArea)	{
+		this.minArea = minArea;
+	}//setMinArea
+	
+}//class
@@ -0,0 +1,80 @@
+package hgcore.core;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Splits a pure-Java pixel pass into bands of rows and runs them on one
+ * shared ForkJoinPool. Bands are sized so each carries at least
+ * MIN_BAND_PIXELS of work, small frames don't pay the fork overhead.
+ * Set the pool size with -Dhgcore.parallelism=n or setParallelism().
+ */
+public class RowBands {
+	
+	private static final int MIN_BAND_PIXELS = 32 * 1024;
+	private static final int BANDS_PER_THREAD = 4;	// slack for uneven bands
+	
+	private static volatile ForkJoinPool pool = new ForkJoinPool(
+			Integer.getInteger("hgcore.parallelism", Runtime.getRuntime().availableProcessors()));
+	
+	public interface Band	{
+		//process rows [from, to)
+		public void rows(int from, int to);
+	}//Band
+	
+	private RowBands()	{}
+	
+	/*
+	 * The old pool is not shut down, a frame thread may have just read it
+	 * and be about to invoke on it. Its workers are daemons and exit once
+	 * they have been idle for a while.
+	 */
+	public static void setParallelism(int n)	{
+		pool = new ForkJoinPool(Math.max(1, n));
+	}//setParallelism
+	
+	public static int getParallelism()	{
+		return pool.getParallelism();
+	}//getParallelism
+	
+	//rows per band for a frame of the given shape
+	static int bandRows(int rows, int cols, int parallelism)	{
+		int minRows = Math.max(1, MIN_BAND_PIXELS / Math.max(1, cols));
+		int byThreads = (rows + parallelism * BANDS_PER_THREAD - 1) / (parallelism * BANDS_PER_THREAD);
+		return Math.max(minRows, byThreads);
+	}//bandRows
+	
+	public static void run(int rows, int cols, Band band)	{
+		ForkJoinPool p = pool;
+		int size = bandRows(rows, cols, p.getParallelism());
+		if(size >= rows || p.getParallelism() == 1)	{
+			band.rows(0, rows);
+			return;
+		}//if
+		p.invoke(new Split(band, 0, rows, size));
+	}//run
+	
+	private static class Split extends RecursiveAction	{
+		private static final long serialVersionUID = 1L;
+		
+		private final Band band;
+		private final int from, to, size;
+		
+		Split(Band band, int from, int to, int size)	{
+			this.band = band;
+			this.from = from;
+			this.to = to;
+			this.size = size;
+		}//construct
+		
+		protected void compute()	{
+			if(to - from <= size)	{
+				band.rows(from, to);
+				return;
+			}//if
+			int mid = from + (to - from) / 2;
+			invokeAll(new Split(band, from, mid, size), new Split(band, mid, to, size));
+		}//compute
+	}//Split
+	
+}//class
@@ -0,0 +1,81 @@
+package hgcore.core;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/*
+ * Background as an exponential running average of the frames, thresholded
+ * the same way as the fixed model. Foreground pixels are left out of the
+ * update so a hand held still doesn't fade into the background.
+ */
+public class RunningAverageModel implements BackgroundModel {
+	
+	private static final int RELEARN_FRAMES = 15;
+	private static final double RELEARN_RATE = 0.3;
+	
+	private double learningRate;
+	private int fastFrames = 0;
+	
+	private Mat average = new Mat();	// 32FC3 accumulator
+	private Mat background = new Mat();
+	private Mat mask = new Mat();
+	private Mat stillMask = new Mat();
+	private BackgroundSubtractor sub;
+	
+	public RunningAverageModel(double learningRate)	{
+		this(learningRate, new BackgroundSubtractor());
+	}//construct
+	
+	public RunningAverageModel(double learningRate, BackgroundSubtractor sub)	{
+		this.learningRate = learningRate;
+		this.sub = sub;
+	}//construct
+	
+	public void learn(Mat frame)	{
+		frame.convertTo(average, CvType.CV_32FC3);
+		sub.setModel(frame);
+	}//learn
+	
+	public void apply(Mat frame, Mat out)	{
+		boolean relearning = fastFrames > 0;
+		double rate = learningRate;
+		if(relearning)	{
+			fastFrames--;
+			rate = RELEARN_RATE;
+		}//if
+		
+		//update from the frame before out (possibly the same Mat) is overwritten
+		sub.apply(frame, mask);
+		if(relearning)
+			Imgproc.accumulateWeighted(frame, average, rate);
+		else	{
+			Imgproc.cvtColor(mask, stillMask, Imgproc.COLOR_BGR2GRAY);
+			Core.bitwise_not(stillMask, stillMask);
+			Imgproc.accumulateWeighted(frame, average, rate, stillMask);
+		}//else
+		mask.copyTo(out);
+		
+		average.convertTo(background, CvType.CV_8UC3);
+		sub.setModel(background);
+	}//apply
+	
+	public void relearn(Mat frame)	{
+		learn(frame);
+		fastFrames = RELEARN_FRAMES;
+	}//relearn
+	
+	public void setThreshold(double value)	{
+		sub.setThreshold(value);
+	}//setThreshold
+	
+	public void setLearningRate(double rate)	{
+		learningRate = rate;
+	}//setLearningRate
+	
+	public double getLearningRate()	{
+		return learningRate;
+	}//getLearningRate
+	
+}//class
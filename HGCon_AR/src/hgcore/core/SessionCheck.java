@@ -0,0 +1,83 @@
+package hgcore.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/*
+ * Round trip check for the session format. Records synthetic frames with
+ * SessionRecorder, plays them back through SessionReplaySource and compares
+ * pixels, timestamps and sequence numbers. JPEG is lossy so only the
+ * metadata is compared for it.
+ *
+ * usage: SessionCheck [width height [frames]]
+ */
+public class SessionCheck {
+	
+	public static void main(String[] args) throws IOException	{
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+		
+		int width = args.length > 1 ? Integer.parseInt(args[0]) : 320;
+		int height = args.length > 1 ? Integer.parseInt(args[1]) : 240;
+		int frames = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+		
+		int[] modes = { SessionFormat.RAW, SessionFormat.PNG, SessionFormat.JPEG };
+		String[] names = { "raw", "png", "jpeg" };
+		boolean ok = true;
+		for(int k = 0; k < modes.length; k++)	{
+			String result = check(modes[k], modes[k] != SessionFormat.JPEG, width, height, frames);
+			System.out.println(names[k] + ": " + (result == null ? "ok" : "FAILED, " + result));
+			ok &= result == null;
+		}//for
+		if(!ok)
+			System.exit(1);
+	}//main
+	
+	//returns null when every frame came back intact, otherwise what went wrong
+	private static String check(int compression, boolean exact, int width, int height, int frames) throws IOException	{
+		File f = File.createTempFile("session", ".hgs");
+		f.deleteOnExit();
+		Random rnd = new Random(compression);
+		byte[][] sent = new byte[frames][width * height * 3];
+		
+		SessionRecorder rec = new SessionRecorder(f, compression, 0, 0);
+		Mat frame = new Mat(height, width, CvType.CV_8UC3);
+		for(int n = 0; n < frames; n++)	{
+			rnd.nextBytes(sent[n]);
+			frame.put(0, 0, sent[n]);
+			rec.record(frame, 1000L * n, n + 1);
+		}//for
+		rec.close();
+		frame.release();
+		
+		SessionReplaySource src = new SessionReplaySource(f, true);
+		try	{
+			if(src.getFrameCount() != frames)
+				return "recorded " + frames + " frames, index holds " + src.getFrameCount();
+			Mat back = new Mat();
+			byte[] got = new byte[width * height * 3];
+			for(int n = 0; n < frames; n++)	{
+				if(!src.read(back))
+					return "frame " + n + " could not be read";
+				if(src.getTimestamp() != 1000L * n || src.getSequence() != n + 1)
+					return "frame " + n + " came back as seq " + src.getSequence() + " at " + src.getTimestamp();
+				if(back.cols() != width || back.rows() != height || back.type() != CvType.CV_8UC3)
+					return "frame " + n + " came back as " + back.cols() + "x" + back.rows() + " type " + back.type();
+				back.get(0, 0, got);
+				if(exact && !Arrays.equals(sent[n], got))
+					return "frame " + n + " pixels differ";
+			}//for
+			back.release();
+		}finally	{
+			src.release();
+			f.delete();
+		}//finally
+		return null;
+	}//check
+	
+}//class
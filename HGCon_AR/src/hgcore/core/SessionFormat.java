@@ -0,0 +1,40 @@
+package hgcore.core;
+
+/*
+ * Layout of a recorded session (.hgs), all values big endian.
+ *
+ *   file header   magic, version, compression, frame count, index offset
+ *   frame record  timestamp (ns), sequence, width, height, Mat type,
+ *                 payload length, payload (raw BGR rows or an encoded image)
+ *   ...
+ *   index         one absolute offset per frame record
+ *   trailer       index offset, frame count, index magic
+ *
+ * The frame count and index offset are also patched into the file header
+ * when the recorder is closed so a reader can start from either end.
+ */
+final class SessionFormat {
+	
+	static final int MAGIC = 0x48475352;		// "HGSR"
+	static final int INDEX_MAGIC = 0x48474958;	// "HGIX"
+	static final int VERSION = 1;
+	
+	static final int FILE_HEADER = 24;
+	static final int FRAME_HEADER = 32;
+	static final int TRAILER = 16;
+	
+	//file header field offsets
+	static final int COUNT_POS = 12;
+	static final int INDEX_POS = 16;
+	
+	static final int RAW = 0;
+	static final int PNG = 1;
+	static final int JPEG = 2;
+	
+	private SessionFormat()	{}
+	
+	static String extension(int compression)	{
+		return compression == PNG ? ".png" : ".jpg";
+	}//extension
+	
+}//class
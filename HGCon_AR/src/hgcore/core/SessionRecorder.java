@@ -0,0 +1,226 @@
+package hgcore.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.highgui.Highgui;
+
+/*
+ * Appends frames from the capture loop to a memory-mapped session file, see
+ * SessionFormat for the layout. Raw frames are written straight into the
+ * mapping. With PNG/JPEG compression each frame is encoded on a worker pool
+ * and the encoded frames are written back in capture order.
+ */
+public class SessionRecorder {
+	
+	private static final long CHUNK = 64L << 20;	// grow the mapping 64 MB at a time
+	private static final int MAX_IN_FLIGHT = 8;
+	
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private MappedByteBuffer map;
+	private long mapStart = 0;
+	private long position = SessionFormat.FILE_HEADER;
+	
+	private int compression;
+	private int quality;
+	private long[] offsets = new long[1024];
+	private int count = 0;
+	private byte[] scratch = new byte[0];
+	private boolean closed = false;
+	
+	private ExecutorService encoders;
+	private ArrayDeque<Encoded> pending = new ArrayDeque<Encoded>();
+	
+	private static class Encoded	{
+		long timestamp, seq;
+		int width, height, type;
+		Future<byte[]> data;
+	}//Encoded
+	
+	public SessionRecorder(File out) throws IOException	{
+		this(out, SessionFormat.RAW, 0, 0);
+	}//construct
+	
+	/*
+	 * compression is SessionFormat.RAW, PNG or JPEG. quality is the JPEG
+	 * quality or PNG compression level, 0 keeps the OpenCV default.
+	 */
+	public SessionRecorder(File out, int compression, int quality, int workers) throws IOException	{
+		this.compression = compression;
+		this.quality = quality;
+		
+		file = new RandomAccessFile(out, "rw");
+		file.setLength(0);
+		channel = file.getChannel();
+		remap(0, CHUNK);
+		//absolute puts, the mapping is already positioned past the header for the first frame
+		map.putInt(0, SessionFormat.MAGIC);
+		map.putInt(4, SessionFormat.VERSION);
+		map.putInt(8, compression);
+		map.putInt(SessionFormat.COUNT_POS, 0);		// frame count, patched on close
+		map.putLong(SessionFormat.INDEX_POS, 0);	// index offset, patched on close
+		
+		if(compression != SessionFormat.RAW)	{
+			if(workers < 1)
+				workers = Runtime.getRuntime().availableProcessors();
+			encoders = Executors.newFixedThreadPool(workers, new ThreadFactory()	{
+				public Thread newThread(Runnable r)	{
+					Thread t = new Thread(r, "Frame Encoder");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}//if
+	}//construct
+	
+	private void remap(long start, long size) throws IOException	{
+		if(map != null)
+			map.force();
+		mapStart = start;
+		map = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+		map.position((int)(position - start));
+	}//remap
+	
+	//make room for len more bytes at the current position
+	private void reserve(long len) throws IOException	{
+		if(position + len > mapStart + map.capacity())
+			remap(position, Math.max(CHUNK, len));
+	}//reserve
+	
+	public synchronized void record(Mat frame, long timestamp, long seq) throws IOException	{
+		if(closed || frame.empty())
+			return;
+		
+		if(compression == SessionFormat.RAW)	{
+			int len = (int)(frame.total() * frame.elemSize());
+			if(scratch.length < len)
+				scratch = new byte[len];
+			frame.get(0, 0, scratch);
+			writeFrame(timestamp, seq, frame.cols(), frame.rows(), frame.type(), scratch, len);
+			return;
+		}//if
+		
+		//encoders need their own copy, the ring slot is reused by the grabber
+		final Mat copy = frame.clone();
+		Encoded e = new Encoded();
+		e.timestamp = timestamp;
+		e.seq = seq;
+		e.width = frame.cols();
+		e.height = frame.rows();
+		e.type = frame.type();
+		e.data = encoders.submit(new Callable<byte[]>()	{
+			public byte[] call()	{
+				MatOfByte buf = new MatOfByte();
+				if(quality > 0)
+					Highgui.imencode(SessionFormat.extension(compression), copy, buf, new MatOfInt(
+							compression == SessionFormat.PNG ? Highgui.CV_IMWRITE_PNG_COMPRESSION : Highgui.CV_IMWRITE_JPEG_QUALITY,
+							quality));
+				else
+					Highgui.imencode(SessionFormat.extension(compression), copy, buf);
+				copy.release();
+				byte[] b = buf.toArray();
+				buf.release();
+				return b;
+			}
+		});
+		pending.add(e);
+		drain(false);
+	}//record
+	
+	/*
+	 * Writes finished encodes in order. Blocks on the oldest one while more
+	 * than MAX_IN_FLIGHT are queued, or until the queue is empty when all is
+	 * set (close must not write the index ahead of the last frames).
+	 */
+	private void drain(boolean all) throws IOException	{
+		while(!pending.isEmpty() && (all || pending.size() > MAX_IN_FLIGHT || pending.peek().data.isDone()))	{
+			Encoded e = pending.poll();
+			byte[] b;
+			try	{
+				b = e.data.get();
+			}catch(InterruptedException ie)	{
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while encoding frame " + e.seq);
+			}catch(ExecutionException ee)	{
+				throw new IOException("Failed to encode frame " + e.seq, ee.getCause());
+			}//catch
+			writeFrame(e.timestamp, e.seq, e.width, e.height, e.type, b, b.length);
+		}//while
+	}//drain
+	
+	private void writeFrame(long timestamp, long seq, int width, int height, int type, byte[] data, int len) throws IOException	{
+		reserve(SessionFormat.FRAME_HEADER + len);
+		if(count == offsets.length)	{
+			long[] grown = new long[count * 2];
+			System.arraycopy(offsets, 0, grown, 0, count);
+			offsets = grown;
+		}//if
+		offsets[count++] = position;
+		
+		map.putLong(timestamp);
+		map.putLong(seq);
+		map.putInt(width);
+		map.putInt(height);
+		map.putInt(type);
+		map.putInt(len);
+		map.put(data, 0, len);
+		position += SessionFormat.FRAME_HEADER + len;
+	}//writeFrame
+	
+	public synchronized int getFrameCount()	{
+		return count;
+	}//getFrameCount
+	
+	//writes the index and trailer and trims the file to its real length
+	public synchronized void close() throws IOException	{
+		if(closed)
+			return;
+		closed = true;
+		try	{
+			if(encoders != null)	{
+				drain(true);
+				encoders.shutdown();
+			}//if
+			
+			long indexOffset = position;
+			reserve(count * 8L + SessionFormat.TRAILER);
+			for(int i = 0; i < count; i++)
+				map.putLong(offsets[i]);
+			map.putLong(indexOffset);
+			map.putInt(count);
+			map.putInt(SessionFormat.INDEX_MAGIC);
+			position += count * 8L + SessionFormat.TRAILER;
+			map.force();
+			
+			MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_WRITE, 0, SessionFormat.FILE_HEADER);
+			head.putInt(SessionFormat.COUNT_POS, count);
+			head.putLong(SessionFormat.INDEX_POS, indexOffset);
+			head.force();
+			
+			map = null;
+			try	{
+				channel.truncate(position);
+			}catch(IOException e)	{
+				//windows refuses while a mapping is still live, readers go by the header so the slack is harmless
+			}//catch
+		}finally	{
+			channel.close();
+			file.close();
+		}//finally
+	}//close
+	
+}//class
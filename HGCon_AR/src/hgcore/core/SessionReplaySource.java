@@ -0,0 +1,170 @@
+package hgcore.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.highgui.Highgui;
+
+/*
+ * Plays back a session written by SessionRecorder. The file is mapped
+ * read-only in large windows and frames are located through the trailing
+ * index, so seek() is O(1). Playback follows the recorded timestamps unless
+ * max speed is on.
+ */
+public class SessionReplaySource implements FrameSource {
+	
+	private static final long WINDOW = 1L << 30;
+	
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private MappedByteBuffer map;
+	private long mapStart = 0;
+	private long mapEnd = 0;
+	
+	private int compression;
+	private long[] offsets;
+	private int next = 0;
+	private byte[] scratch = new byte[0];
+	private MatOfByte encoded = new MatOfByte();
+	
+	private boolean maxSpeed;
+	private long firstStamp = -1;
+	private long playStart;
+	
+	private long timestamp, seq;
+	
+	public SessionReplaySource(File in, boolean maxSpeed) throws IOException	{
+		this.maxSpeed = maxSpeed;
+		file = new RandomAccessFile(in, "r");
+		channel = file.getChannel();
+		
+		MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, SessionFormat.FILE_HEADER);
+		if(head.getInt(0) != SessionFormat.MAGIC)
+			throw new IOException(in + " is not a recorded session");
+		compression = head.getInt(8);
+		int count = head.getInt(SessionFormat.COUNT_POS);
+		long indexOffset = head.getLong(SessionFormat.INDEX_POS);
+		if(indexOffset == 0)
+			throw new IOException(in + " was not closed properly, it has no index");
+		
+		MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, count * 8L);
+		offsets = new long[count];
+		for(int i = 0; i < count; i++)
+			offsets[i] = index.getLong();
+	}//construct
+	
+	//map a window starting at the frame so the whole record is addressable
+	private void window(long offset, long len) throws IOException	{
+		if(offset >= mapStart && offset + len <= mapEnd)
+			return;
+		long size = Math.min(Math.max(WINDOW, len), channel.size() - offset);
+		map = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+		mapStart = offset;
+		mapEnd = offset + size;
+	}//window
+	
+	public boolean read(Mat frame)	{
+		if(next >= offsets.length)
+			return false;
+		
+		try	{
+			long offset = offsets[next++];
+			window(offset, SessionFormat.FRAME_HEADER);
+			int p = (int)(offset - mapStart);
+			timestamp = map.getLong(p);
+			seq = map.getLong(p + 8);
+			int width = map.getInt(p + 16);
+			int height = map.getInt(p + 20);
+			int type = map.getInt(p + 24);
+			int len = map.getInt(p + 28);
+			
+			window(offset, SessionFormat.FRAME_HEADER + len);
+			p = (int)(offset - mapStart) + SessionFormat.FRAME_HEADER;
+			
+			//OpenCV's Java API can't wrap a ByteBuffer, so one bulk copy into a reused array
+			if(scratch.length < len)
+				scratch = new byte[len];
+			map.position(p);
+			map.get(scratch, 0, len);
+			
+			if(compression == SessionFormat.RAW)	{
+				frame.create(height, width, type);
+				frame.put(0, 0, scratch);
+			}//if
+			else	{
+				//put stops at the end of the Mat, so the grow-only scratch goes in as it is
+				encoded.create(len, 1, CvType.CV_8UC1);
+				encoded.put(0, 0, scratch);
+				Mat decoded = Highgui.imdecode(encoded, Highgui.CV_LOAD_IMAGE_COLOR);
+				decoded.copyTo(frame);
+				decoded.release();
+			}//else
+		}catch(IOException e)	{
+			e.printStackTrace();
+			return false;
+		}//catch
+		
+		pace();
+		return true;
+	}//read
+	
+	//hold each frame back until its recorded time has come
+	private void pace()	{
+		if(maxSpeed)
+			return;
+		
+		long now = System.nanoTime();
+		if(firstStamp < 0)	{
+			firstStamp = timestamp;
+			playStart = now;
+			return;
+		}//if
+		
+		long wait = (timestamp - firstStamp) - (now - playStart);
+		if(wait > 0)	{
+			try	{
+				Thread.sleep(wait / 1000000L, (int)(wait % 1000000L));
+			}catch(InterruptedException e){ Thread.currentThread().interrupt(); }
+		}//if
+	}//pace
+	
+	public void seek(int frame)	{
+		next = Math.max(0, Math.min(frame, offsets.length));
+		firstStamp = -1;
+	}//seek
+	
+	public int getFrameCount()	{
+		return offsets.length;
+	}//getFrameCount
+	
+	//capture time and sequence number of the frame last read
+	public long getTimestamp()	{
+		return timestamp;
+	}//getTimestamp
+	
+	public long getSequence()	{
+		return seq;
+	}//getSequence
+	
+	public boolean isLive()	{
+		return false;
+	}//isLive
+	
+	public void release()	{
+		map = null;
+		encoded.release();
+		try	{
+			channel.close();
+			file.close();
+		}catch(IOException e)	{
+			e.printStackTrace();
+		}//catch
+	}//release
+	
+}//class
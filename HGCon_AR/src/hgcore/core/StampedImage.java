@@ -0,0 +1,21 @@
+package hgcore.core;
+
+import java.awt.image.BufferedImage;
+
+/*
+ * A published output image together with the capture time and sequence
+ * number of the camera frame it was made from.
+ */
+public class StampedImage {
+	
+	public final BufferedImage image;
+	public final long captured;	// System.nanoTime() when the frame was grabbed
+	public final long seq;
+	
+	public StampedImage(BufferedImage image, long captured, long seq)	{
+		this.image = image;
+		this.captured = captured;
+		this.seq = seq;
+	}//construct
+	
+}//class
@@ -0,0 +1,37 @@
+package hgcore.core;
+
+import org.opencv.core.Mat;
+
+/*
+ * The "reveal true image" pass: wherever the processed image is black the
+ * camera pixel shows through. One bulk copy in and out of each Mat, the
+ * pixel work itself runs over RowBands.
+ */
+public class TrueColorReveal {
+	
+	private byte[] groundPx = new byte[0];
+	private byte[] cameraPx = new byte[0];
+	
+	//ground and camera are both 8UC3 of the same size, ground is updated in place
+	public void apply(Mat ground, Mat camera)	{
+		int len = (int)(ground.total() * ground.channels());
+		if(groundPx.length != len)	{
+			groundPx = new byte[len];
+			cameraPx = new byte[len];
+		}//if
+		ground.get(0, 0, groundPx);
+		camera.get(0, 0, cameraPx);
+		
+		final byte[] g = groundPx;
+		final byte[] c = cameraPx;
+		final int stride = ground.cols() * 3;
+		RowBands.run(ground.rows(), ground.cols(), new RowBands.Band()	{
+			public void rows(int from, int to)	{
+				PixelKernels.reveal(g, c, from * stride, to * stride);
+			}
+		});
+		
+		ground.put(0, 0, g);
+	}//apply
+	
+}//class
@@ -0,0 +1,39 @@
+package hgcore.core;
+
+import org.opencv.core.Mat;
+import org.opencv.highgui.VideoCapture;
+
+public class VideoFileFrameSource implements FrameSource {
+	
+	//not exported by the 2.4 Java Highgui, value from highgui_c.h
+	private static final int CV_CAP_PROP_FPS = 5;
+	
+	private VideoCapture capture;
+	private FramePacer pacer;
+	
+	public VideoFileFrameSource(String path, boolean maxSpeed)	{
+		capture = new VideoCapture(path);
+		if(!capture.isOpened())
+			throw new IllegalArgumentException("Can't open video file " + path);
+		
+		//0 or less when the container doesn't say, FramePacer falls back to 30
+		pacer = new FramePacer(capture.get(CV_CAP_PROP_FPS), maxSpeed);
+	}//construct
+	
+	public boolean read(Mat frame)	{
+		if(!capture.read(frame) || frame.empty())
+			return false;
+		
+		pacer.pace();
+		return true;
+	}//read
+	
+	public boolean isLive()	{
+		return false;
+	}//isLive
+	
+	public void release()	{
+		capture.release();
+	}//release
+	
+}//class